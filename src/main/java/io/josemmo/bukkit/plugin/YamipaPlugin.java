@@ -2,6 +2,7 @@ package io.josemmo.bukkit.plugin;
 
 import io.josemmo.bukkit.plugin.commands.ImageCommandBridge;
 import io.josemmo.bukkit.plugin.renderer.*;
+import io.josemmo.bukkit.plugin.storage.CacheEvictor;
 import io.josemmo.bukkit.plugin.storage.ImageStorage;
 import io.josemmo.bukkit.plugin.utils.Logger;
 import org.bstats.bukkit.Metrics;
@@ -12,9 +13,12 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.awt.Color;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
@@ -24,9 +28,12 @@ public class YamipaPlugin extends JavaPlugin {
     private static @Nullable YamipaPlugin INSTANCE;
     private boolean verbose;
     private @Nullable ImageStorage storage;
+    private @Nullable CacheEvictor cacheEvictor;
     private @Nullable ImageRenderer renderer;
     private @Nullable ItemService itemService;
     private @Nullable ScheduledExecutorService scheduler;
+    private @Nullable ForkJoinPool renderPool;
+    private @Nullable CacheWarmUp cacheWarmUp;
     private @Nullable Metrics metrics;
 
     /**
@@ -47,6 +54,15 @@ public class YamipaPlugin extends JavaPlugin {
         return storage;
     }
 
+    /**
+     * Get cache evictor instance
+     * @return Cache evictor instance
+     */
+    public @NotNull CacheEvictor getCacheEvictor() {
+        Objects.requireNonNull(cacheEvictor, "Cannot get cache evictor instance if plugin is not running");
+        return cacheEvictor;
+    }
+
     /**
      * Get image renderer instance
      * @return Image renderer instance
@@ -65,6 +81,23 @@ public class YamipaPlugin extends JavaPlugin {
         return scheduler;
     }
 
+    /**
+     * Get image rendering pool
+     * @return Fork/join pool for rendering images
+     */
+    public @NotNull ForkJoinPool getRenderPool() {
+        Objects.requireNonNull(renderPool, "Cannot get render pool instance if plugin is not running");
+        return renderPool;
+    }
+
+    /**
+     * Get cache warm-up pool
+     * @return Fork/join pool for warming-up the cache or NULL if not running
+     */
+    public @Nullable ForkJoinPool getWarmUpPool() {
+        return (cacheWarmUp == null) ? null : cacheWarmUp.getPool();
+    }
+
     /**
      * Is verbose
      * @return Whether plugin is running in verbose mode
@@ -97,10 +130,12 @@ public class YamipaPlugin extends JavaPlugin {
 
         // Create image storage
         String allowedPaths = getConfig().getString("allowed-paths", "");
+        long fileQuietPeriod = Math.max(getConfig().getLong("file-quiet-period", 1000), 0);
         storage = new ImageStorage(
             basePath.resolve(imagesPath).toAbsolutePath().normalize(),
             basePath.resolve(cachePath).toAbsolutePath().normalize(),
-            allowedPaths
+            allowedPaths,
+            fileQuietPeriod
         );
         try {
             storage.start();
@@ -108,24 +143,64 @@ public class YamipaPlugin extends JavaPlugin {
             LOGGER.severe("Failed to initialize image storage", e);
         }
 
+        // Create cache evictor
+        long maxCacheSize = Math.max(getConfig().getLong("max-cache-size", 0), 0) * 1024 * 1024;
+        cacheEvictor = new CacheEvictor(storage.getCachePath(), maxCacheSize);
+        cacheEvictor.start();
+
         // Create image renderer
         boolean animateImages = getConfig().getBoolean("animate-images", true);
         LOGGER.info(animateImages ? "Enabled image animation support" : "Image animation support is disabled");
         int maxImageDimension = getConfig().getInt("max-image-dimension", 30);
-        renderer = new ImageRenderer(basePath.resolve(dataPath), animateImages, maxImageDimension);
+        String rawResampleFilter = getConfig().getString("resample-filter", "bilinear");
+        ImageResampler.Filter resampleFilter;
+        try {
+            resampleFilter = ImageResampler.Filter.fromName(rawResampleFilter);
+        } catch (IllegalArgumentException __) {
+            LOGGER.warning("Unknown resample filter \"" + rawResampleFilter + "\", falling back to bilinear");
+            resampleFilter = ImageResampler.Filter.BILINEAR;
+        }
+        long maxRenderMemory = Math.max(getConfig().getLong("max-render-memory", 512), 0) * 1024 * 1024;
+        long maxRenderWork = Math.max(getConfig().getLong("max-render-work", 2000), 0) * 1_000_000;
+        int maxAnimationFps = Math.min(Math.max(getConfig().getInt("max-animation-fps", 20), 1), 20);
+        int maxAnimationSteps = Math.min(Math.max(getConfig().getInt("max-animation-steps", FakeImage.MAX_STEPS), 1),
+            FakeImage.MAX_STEPS);
+        renderer = new ImageRenderer(basePath.resolve(dataPath), animateImages, maxImageDimension, resampleFilter,
+            maxRenderMemory, maxRenderWork, maxAnimationFps, maxAnimationSteps);
         renderer.start();
 
         // Create image item service
         itemService = new ItemService();
         itemService.start();
 
-        // Create thread pool
+        // Create thread pools
         scheduler = Executors.newScheduledThreadPool(6);
+        int renderThreads = getConfig().getInt("render-threads", 0);
+        if (renderThreads < 1) {
+            renderThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+        }
+        renderPool = new ForkJoinPool(renderThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Yamipa-Render-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        LOGGER.fine("Using " + renderThreads + " thread(s) for rendering images");
 
         // Warm-up plugin dependencies
         LOGGER.fine("Triggered map color cache warm-up");
         FakeMap.pixelToIndex(Color.RED.getRGB()); // Ask for a color index to force cache generation
 
+        // Export color palette (used by offline tools)
+        try {
+            ColorPalette.export(basePath.resolve("palette.bin"));
+        } catch (IOException e) {
+            LOGGER.warning("Failed to export color palette", e);
+        }
+
+        // Warm-up cache files of placed images
+        cacheWarmUp = new CacheWarmUp(getConfig().getInt("warm-up-threads", 1));
+        cacheWarmUp.start(renderer.getAllImages());
+
         // Initialize bStats
         Function<Integer, String> toStats = number -> {
             if (number >= 1000) return "1000+";
@@ -149,6 +224,12 @@ public class YamipaPlugin extends JavaPlugin {
             metrics = null;
         }
 
+        // Stop cache warm-up
+        if (cacheWarmUp != null) {
+            cacheWarmUp.stop();
+            cacheWarmUp = null;
+        }
+
         // Stop item service
         if (itemService != null) {
             itemService.stop();
@@ -161,6 +242,12 @@ public class YamipaPlugin extends JavaPlugin {
             renderer = null;
         }
 
+        // Stop cache evictor
+        if (cacheEvictor != null) {
+            cacheEvictor.stop();
+            cacheEvictor = null;
+        }
+
         // Stop image storage
         if (storage != null) {
             storage.stop();
@@ -173,6 +260,12 @@ public class YamipaPlugin extends JavaPlugin {
             scheduler = null;
         }
 
+        // Stop render pool
+        if (renderPool != null) {
+            renderPool.shutdownNow();
+            renderPool = null;
+        }
+
         // Remove Bukkit listeners and tasks
         HandlerList.unregisterAll(this);
         Bukkit.getScheduler().cancelTasks(this);
@@ -1,11 +1,14 @@
 package io.josemmo.bukkit.plugin.commands;
 
 import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.renderer.BulkRemoveTask;
 import io.josemmo.bukkit.plugin.renderer.FakeImage;
 import io.josemmo.bukkit.plugin.renderer.ImageRenderer;
 import io.josemmo.bukkit.plugin.renderer.ItemService;
+import io.josemmo.bukkit.plugin.storage.FilenameIndex;
 import io.josemmo.bukkit.plugin.storage.ImageFile;
 import io.josemmo.bukkit.plugin.storage.ImageStorage;
+import io.josemmo.bukkit.plugin.storage.RenderAdmission;
 import io.josemmo.bukkit.plugin.utils.Logger;
 import io.josemmo.bukkit.plugin.utils.Permissions;
 import io.josemmo.bukkit.plugin.utils.SelectBlockTask;
@@ -29,6 +32,7 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Predicate;
 
 public class ImageCommand {
     private static final int ITEMS_PER_PAGE = 9;
@@ -67,7 +71,7 @@ public class ImageCommand {
 
     public static void listImages(@NotNull CommandSender sender, int page) {
         ImageStorage storage = YamipaPlugin.getInstance().getStorage();
-        List<String> filenames = storage.getFilenames(sender);
+        FilenameIndex filenames = storage.getFilenames(sender);
         int numOfImages = filenames.size();
 
         // Are there any images available?
@@ -89,8 +93,8 @@ public class ImageCommand {
             int maxPage = (int) Math.ceil((float) numOfImages / ITEMS_PER_PAGE);
             sender.sendMessage("=== Page " + page + " out of " + maxPage + " ===");
         }
-        for (int i=firstImageIndex; i<stopImageIndex; ++i) {
-            sender.sendMessage(ChatColor.GOLD + filenames.get(i));
+        for (String filename : filenames.getPage(firstImageIndex, stopImageIndex-firstImageIndex)) {
+            sender.sendMessage(ChatColor.GOLD + filename);
         }
     }
 
@@ -208,6 +212,9 @@ public class ImageCommand {
             return;
         }
         final int finalHeight = (height == 0) ? FakeImage.getProportionalHeight(sizeInPixels, player, width) : height;
+        if (!isRenderAdmitted(player, image, width, finalHeight)) {
+            return;
+        }
 
         // Ask player where to place image
         SelectBlockTask task = new SelectBlockTask(player);
@@ -233,8 +240,9 @@ public class ImageCommand {
             width, height, new Date(), player, flags);
 
         // Make sure image can be placed
+        Permissions.BatchQuery buildQuery = Permissions.newBatchQuery(player, true);
         for (Location loc : fakeImage.getAllLocations()) {
-            if (!Permissions.canBuild(player, loc)) {
+            if (!buildQuery.test(loc)) {
                 ActionBar.send(player, ChatColor.RED + "You're not allowed to place an image here!");
                 return false;
             }
@@ -253,6 +261,24 @@ public class ImageCommand {
         return true;
     }
 
+    private static boolean isRenderAdmitted(
+        @NotNull CommandSender sender,
+        @NotNull ImageFile image,
+        int width,
+        int height
+    ) {
+        RenderAdmission admission = RenderAdmission.evaluate(image, width, height);
+        String message = admission.getMessage();
+        if (admission.isRefused()) {
+            sender.sendMessage(ChatColor.RED + message);
+            return false;
+        }
+        if (message != null) {
+            sender.sendMessage(ChatColor.YELLOW + message);
+        }
+        return true;
+    }
+
     public static void removeImage(@NotNull Player player) {
         SelectBlockTask task = new SelectBlockTask(player);
         task.onSuccess((location, face) -> {
@@ -281,11 +307,9 @@ public class ImageCommand {
 
     public static boolean removeImage(@NotNull Player player, @NotNull FakeImage image) {
         // Check block permissions
-        for (Location loc : image.getAllLocations()) {
-            if (!Permissions.canDestroy(player, loc)) {
-                ActionBar.send(player, ChatColor.RED + "You're not allowed to remove this image!");
-                return false;
-            }
+        if (!Permissions.newBatchQuery(player, false).testAll(image.getAllLocations())) {
+            ActionBar.send(player, ChatColor.RED + "You're not allowed to remove this image!");
+            return false;
         }
 
         // Trigger image removal
@@ -317,23 +341,15 @@ public class ImageCommand {
         }
 
         // Filter out images outside the permission scope of the sender
+        // NOTE: a single batched query is shared by all images, as most of them will be in the same regions
+        Predicate<FakeImage> filter = null;
         if (sender instanceof Player) {
-            Player senderAsPlayer = (Player) sender;
-            images.removeIf(image -> {
-                for (Location loc : image.getAllLocations()) {
-                    if (!Permissions.canDestroy(senderAsPlayer, loc)) {
-                        return true;
-                    }
-                }
-                return false;
-            });
+            Permissions.BatchQuery destroyQuery = Permissions.newBatchQuery((Player) sender, false);
+            filter = image -> destroyQuery.testAll(image.getAllLocations());
         }
 
-        // Remove found images
-        for (FakeImage image : images) {
-            renderer.removeImage(image);
-        }
-        sender.sendMessage("Removed " + images.size() + " placed image(s)");
+        // Remove found images across server ticks
+        new BulkRemoveTask(sender, images, filter).start();
     }
 
     public static void describeImage(@NotNull Player player) {
@@ -365,8 +381,14 @@ public class ImageCommand {
                 image.getWidth() + "x" + image.getHeight() + " blocks");
 
             // Speed
-            int delay = image.getDelay() * 50;
-            String delayStr = (delay > 0) ? delay + " ms per step" : ChatColor.GRAY + "N/A";
+            int[] delays = image.getDelays();
+            long duration = 0;
+            for (int delay : delays) {
+                duration += delay * 50L;
+            }
+            String delayStr = (duration > 0) ?
+                delays.length + " steps in " + duration + " ms" :
+                ChatColor.GRAY + "N/A";
             player.sendMessage(ChatColor.GOLD + "Speed: " + ChatColor.RESET + delayStr);
 
             // Placed At
@@ -470,6 +492,9 @@ public class ImageCommand {
         if (height == 0) {
             height = FakeImage.getProportionalHeight(sizeInPixels, sender, width);
         }
+        if (!isRenderAdmitted(sender, image, width, height)) {
+            return;
+        }
 
         // Create item stack
         ItemStack itemStack = ItemService.getImageItem(image, amount, width, height, flags);
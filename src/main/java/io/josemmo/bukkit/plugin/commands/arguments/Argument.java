@@ -6,11 +6,19 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.jetbrains.annotations.NotNull;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public abstract class Argument {
+    protected static final int MAX_SUGGESTIONS = 100;
+    protected static final long SUGGESTIONS_TTL = 3000; // In milliseconds
+    private static final Logger LOGGER = Logger.getLogger("Argument");
     protected final String name;
 
     /**
@@ -45,6 +53,42 @@ public abstract class Argument {
         return builder.buildFuture();
     }
 
+    /**
+     * Suggest argument values asynchronously
+     * <p>
+     * Values are computed in a background thread and limited to the first {@link #MAX_SUGGESTIONS} ones.
+     * @param  builder           Suggestions builder instance
+     * @param  suggestionsSource Function returning the values to suggest
+     * @return                   Suggestions
+     */
+    protected static @NotNull CompletableFuture<Suggestions> suggestAsync(
+        @NotNull SuggestionsBuilder builder,
+        @NotNull Supplier<Iterable<String>> suggestionsSource
+    ) {
+        CompletableFuture<Suggestions> future = new CompletableFuture<>();
+        try {
+            Bukkit.getScheduler().runTaskAsynchronously(YamipaPlugin.getInstance(), () -> {
+                try {
+                    int numOfSuggestions = 0;
+                    for (String suggestion : suggestionsSource.get()) {
+                        if (numOfSuggestions++ >= MAX_SUGGESTIONS) {
+                            break;
+                        }
+                        builder.suggest(suggestion);
+                    }
+                    future.complete(builder.build());
+                } catch (Exception e) {
+                    LOGGER.warning("Failed to compute suggestions", e);
+                    future.complete(Suggestions.empty().join());
+                }
+            });
+        } catch (IllegalPluginAccessException __) {
+            // Plugin is being disabled
+            future.complete(Suggestions.empty().join());
+        }
+        return future;
+    }
+
     /**
      * Parse argument value
      * @param  sender   Command sender
@@ -5,13 +5,17 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.storage.FilenameIndex;
 import io.josemmo.bukkit.plugin.storage.ImageFile;
 import io.josemmo.bukkit.plugin.storage.ImageStorage;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class ImageFileArgument extends StringArgument {
+    private static final SuggestionsCache<FilenameIndex> SUGGESTIONS_CACHE = new SuggestionsCache<>(SUGGESTIONS_TTL);
+
     /**
      * Image File Argument constructor
      * @param name Argument name
@@ -22,10 +26,15 @@ public class ImageFileArgument extends StringArgument {
 
     @Override
     public @NotNull CompletableFuture<Suggestions> suggest(@NotNull CommandSender sender, @NotNull SuggestionsBuilder builder) {
-        for (String filename : YamipaPlugin.getInstance().getStorage().getFilenames(sender)) {
-            builder.suggest(StringArgumentType.escapeIfRequired(filename));
-        }
-        return builder.buildFuture();
+        String remaining = builder.getRemaining();
+        String prefix = remaining.startsWith("\"") ? remaining.substring(1) : remaining;
+        return suggestAsync(builder, () -> {
+            ImageStorage storage = YamipaPlugin.getInstance().getStorage();
+            FilenameIndex filenames = SUGGESTIONS_CACHE.get(sender, () -> storage.getFilenames(sender));
+            return filenames.findByPrefix(prefix, MAX_SUGGESTIONS).stream()
+                .map(StringArgumentType::escapeIfRequired)
+                .collect(Collectors.toList());
+        });
     }
 
     @Override
@@ -8,10 +8,15 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class OnlinePlayerArgument extends StringArgument {
+    private static final SuggestionsCache<Set<String>> SUGGESTIONS_CACHE = new SuggestionsCache<>(SUGGESTIONS_TTL);
+
     /**
      * Online player argument constructor
      * @param name Argument name
@@ -22,8 +27,12 @@ public class OnlinePlayerArgument extends StringArgument {
 
     @Override
     public @NotNull CompletableFuture<Suggestions> suggest(@NotNull CommandSender sender, @NotNull SuggestionsBuilder builder) {
-        getAllowedValues().keySet().forEach(builder::suggest);
-        return builder.buildFuture();
+        // NOTE: online players are read from the calling thread, only filtering happens in the background
+        String prefix = builder.getRemainingLowerCase();
+        Set<String> values = SUGGESTIONS_CACHE.get(sender, () -> getAllowedValues().keySet());
+        return suggestAsync(builder, () -> values.stream()
+            .filter(value -> value.toLowerCase(Locale.ROOT).startsWith(prefix))
+            .collect(Collectors.toList()));
     }
 
     @Override
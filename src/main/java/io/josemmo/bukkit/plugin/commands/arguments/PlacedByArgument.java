@@ -9,10 +9,15 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class PlacedByArgument extends StringArgument {
+    private static final SuggestionsCache<Set<String>> SUGGESTIONS_CACHE = new SuggestionsCache<>(SUGGESTIONS_TTL);
+
     /**
      * Placed by Argument constructor
      * @param name Argument name
@@ -23,8 +28,10 @@ public class PlacedByArgument extends StringArgument {
 
     @Override
     public @NotNull CompletableFuture<Suggestions> suggest(@NotNull CommandSender sender, @NotNull SuggestionsBuilder builder) {
-        getAllowedValues().keySet().forEach(builder::suggest);
-        return builder.buildFuture();
+        String prefix = builder.getRemainingLowerCase();
+        return suggestAsync(builder, () -> SUGGESTIONS_CACHE.get(sender, () -> getAllowedValues().keySet()).stream()
+            .filter(value -> value.toLowerCase(Locale.ROOT).startsWith(prefix))
+            .collect(Collectors.toList()));
     }
 
     @Override
@@ -0,0 +1,67 @@
+package io.josemmo.bukkit.plugin.commands.arguments;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of suggestion values, indexed by command sender.
+ * <p>
+ * Tab completion requests arrive on every keystroke, so values are only computed again once they expire.
+ * @param <T> Values type
+ */
+public class SuggestionsCache<T> {
+    private final long ttl;
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Class constructor
+     * @param ttl Time-to-live of cached values in milliseconds
+     */
+    public SuggestionsCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get cached values
+     * @param  sender Command sender
+     * @param  loader Function to compute values if missing or expired
+     * @return        Values
+     */
+    public @NotNull T get(@NotNull CommandSender sender, @NotNull Supplier<T> loader) {
+        String key = (sender instanceof Player) ? ((Player) sender).getUniqueId().toString() : sender.getName();
+        long now = System.currentTimeMillis();
+        Entry<T> entry = entries.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.values;
+        }
+
+        // Compute values and forget about expired entries
+        T values = loader.get();
+        entries.values().removeIf(item -> item.expiresAt <= now);
+        entries.put(key, new Entry<>(values, now+ttl));
+        return values;
+    }
+
+    /**
+     * Cached values
+     * @param <T> Values type
+     */
+    private static class Entry<T> {
+        private final T values;
+        private final long expiresAt;
+
+        /**
+         * Class constructor
+         * @param values    Values
+         * @param expiresAt Expiration timestamp in milliseconds
+         */
+        private Entry(@NotNull T values, long expiresAt) {
+            this.values = values;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
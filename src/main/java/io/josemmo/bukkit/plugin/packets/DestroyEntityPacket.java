@@ -4,9 +4,36 @@ import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.events.PacketContainer;
 import io.josemmo.bukkit.plugin.utils.Internals;
 import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 public class DestroyEntityPacket extends PacketContainer {
+    /**
+     * Create packets to destroy multiple entities
+     * <p>
+     * NOTE: Minecraft 1.17 only supports destroying a single entity per packet.
+     * @param  ids Entity IDs
+     * @return     Packets to send
+     */
+    public static @NotNull List<PacketContainer> forIds(@NotNull List<Integer> ids) {
+        List<PacketContainer> packets = new ArrayList<>();
+        if (Internals.isLessThan(1, 17)) { // Minecraft 1.16.x
+            DestroyEntityPacket packet = new DestroyEntityPacket();
+            packet.getIntegerArrays().write(0, ids.stream().mapToInt(Integer::intValue).toArray());
+            packets.add(packet);
+        } else if (Internals.isLessThan(1, 17, 1)) { // Minecraft 1.17
+            for (int id : ids) {
+                packets.add(new DestroyEntityPacket().setId(id));
+            }
+        } else { // Minecraft 1.17.x
+            DestroyEntityPacket packet = new DestroyEntityPacket();
+            packet.getIntLists().write(0, new ArrayList<>(ids));
+            packets.add(packet);
+        }
+        return packets;
+    }
+
     public DestroyEntityPacket() {
         super(PacketType.Play.Server.ENTITY_DESTROY);
     }
@@ -0,0 +1,105 @@
+package io.josemmo.bukkit.plugin.renderer;
+
+import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.utils.ActionBar;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Task for removing placed images in bulk.
+ * <p>
+ * Removals are spread across server ticks so that no tick spends more than a fixed time budget on them. Destroy
+ * packets are sent once per tick and player, and progress is reported to the sender until the task completes.
+ */
+public class BulkRemoveTask implements Runnable {
+    private static final long TIME_BUDGET = 5_000_000L; // In nanoseconds per server tick
+    private static final long PROGRESS_INTERVAL = 2000L; // In milliseconds
+    private static final Logger LOGGER = Logger.getLogger("BulkRemoveTask");
+    private final CommandSender sender;
+    private final Iterator<FakeImage> iterator;
+    private final int total;
+    private final @Nullable Predicate<FakeImage> filter;
+    private int processed = 0;
+    private int removed = 0;
+    private long lastProgressAt;
+    private @Nullable BukkitTask task;
+
+    /**
+     * Class constructor
+     * @param sender Sender to report progress to
+     * @param images Images to remove
+     * @param filter Only remove images matching this filter or NULL to remove all images
+     */
+    public BulkRemoveTask(
+        @NotNull CommandSender sender,
+        @NotNull Collection<FakeImage> images,
+        @Nullable Predicate<FakeImage> filter
+    ) {
+        this.sender = sender;
+        this.iterator = new ArrayList<>(images).iterator();
+        this.total = images.size();
+        this.filter = filter;
+    }
+
+    /**
+     * Start task
+     */
+    public void start() {
+        lastProgressAt = System.currentTimeMillis();
+        task = Bukkit.getScheduler().runTaskTimer(YamipaPlugin.getInstance(), this, 0L, 1L);
+    }
+
+    @Override
+    public void run() {
+        ImageRenderer renderer = YamipaPlugin.getInstance().getRenderer();
+        long deadline = System.nanoTime() + TIME_BUDGET;
+
+        // Remove as many images as possible within time budget
+        Map<Player, List<Integer>> destroyedEntityIds = new HashMap<>();
+        int removedInTick = 0;
+        while (iterator.hasNext() && System.nanoTime() < deadline) {
+            FakeImage image = iterator.next();
+            ++processed;
+            if (filter != null && !filter.test(image)) {
+                continue;
+            }
+            if (renderer.removeImageDeferred(image, destroyedEntityIds)) {
+                ++removedInTick;
+            }
+        }
+        if (removedInTick > 0) {
+            renderer.commitBulkRemoval(destroyedEntityIds);
+            removed += removedInTick;
+        }
+
+        // Report completion
+        if (!iterator.hasNext()) {
+            if (task != null) {
+                task.cancel();
+            }
+            LOGGER.fine("Removed " + removed + " out of " + total + " image(s) in bulk");
+            sender.sendMessage("Removed " + removed + " placed image(s)");
+            return;
+        }
+
+        // Report progress
+        long now = System.currentTimeMillis();
+        if (now-lastProgressAt >= PROGRESS_INTERVAL) {
+            lastProgressAt = now;
+            String message = "Removing images... " + processed + "/" + total + " (" + (processed*100/total) + "%)";
+            if (sender instanceof Player) {
+                ActionBar.send((Player) sender, ChatColor.AQUA + message);
+            } else {
+                sender.sendMessage(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.josemmo.bukkit.plugin.renderer;
+
+import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.storage.ImageFile;
+import io.josemmo.bukkit.plugin.storage.ImageStorage;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background job that renders missing or stale cache files of placed images.
+ * <p>
+ * Runs in its own pool of low-priority threads, starting with the images closest to the spawn of their world.
+ */
+public class CacheWarmUp {
+    private static final Logger LOGGER = Logger.getLogger("CacheWarmUp");
+    private static final int PROGRESS_STEPS = 10; // Number of progress reports (at most)
+    private final int numOfThreads;
+    private @Nullable ForkJoinPool pool;
+
+    /**
+     * Class constructor
+     * @param numOfThreads Maximum number of images to render at the same time
+     */
+    public CacheWarmUp(int numOfThreads) {
+        this.numOfThreads = numOfThreads;
+    }
+
+    /**
+     * Get pool
+     * @return Fork/join pool of warm-up threads or NULL if not running
+     */
+    public @Nullable ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Start warm-up
+     * @param images Placed images
+     */
+    public void start(@NotNull Collection<FakeImage> images) {
+        if (numOfThreads < 1) {
+            LOGGER.fine("Cache warm-up is disabled");
+            return;
+        }
+
+        // Get unique image/dimensions pairs, keeping the one closest to its world spawn
+        Map<String, Entry> entries = new HashMap<>();
+        for (FakeImage image : images) {
+            String key = image.getFilename() + "/" + image.getWidth() + "-" + image.getHeight();
+            double distance = getDistanceToSpawn(image.getLocation());
+            Entry entry = entries.get(key);
+            if (entry == null || distance < entry.distance) {
+                entries.put(key, new Entry(image.getFilename(), image.getWidth(), image.getHeight(), distance));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Entry> queue = new ArrayList<>(entries.values());
+        queue.sort(Comparator.comparingDouble(entry -> entry.distance));
+
+        // Create pool of low-priority threads
+        pool = new ForkJoinPool(numOfThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Yamipa-WarmUp-" + thread.getPoolIndex());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, true);
+
+        // Enqueue entries (FIFO, so closest images go first)
+        LOGGER.info("Started cache warm-up of " + queue.size() + " image(s)");
+        long startTime = System.currentTimeMillis();
+        int total = queue.size();
+        int reportInterval = Math.max(total / PROGRESS_STEPS, 1);
+        AtomicInteger checked = new AtomicInteger(0);
+        AtomicInteger rendered = new AtomicInteger(0);
+        for (Entry entry : queue) {
+            pool.execute(() -> {
+                if (warmUp(entry)) {
+                    rendered.incrementAndGet();
+                }
+                int current = checked.incrementAndGet();
+                if (current == total) {
+                    long elapsed = (System.currentTimeMillis() - startTime) / 1000;
+                    LOGGER.info("Finished cache warm-up of " + total + " image(s) in " + elapsed + "s, " +
+                        rendered.get() + " needed rendering");
+                } else if (current % reportInterval == 0) {
+                    LOGGER.info("Cache warm-up progress: " + current + "/" + total + " image(s) checked, " +
+                        rendered.get() + " rendered");
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop warm-up
+     */
+    public void stop() {
+        if (pool == null) {
+            return;
+        }
+        pool.shutdownNow();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warning("Cache warm-up did not finish in time");
+            }
+        } catch (InterruptedException __) {
+            Thread.currentThread().interrupt();
+        }
+        pool = null;
+    }
+
+    /**
+     * Warm-up cache entry
+     * @param  entry Cache entry
+     * @return       Whether cache had to be rendered
+     */
+    private boolean warmUp(@NotNull Entry entry) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        ImageStorage storage = YamipaPlugin.getInstance().getStorage();
+        ImageFile imageFile = storage.get(entry.filename);
+        if (imageFile == null) {
+            LOGGER.fine("Skipped warm-up of missing image file \"" + entry.filename + "\"");
+            return false;
+        }
+        try {
+            return imageFile.warmUp(entry.width, entry.height);
+        } catch (Exception e) {
+            LOGGER.warning("Failed to warm-up cache of image file \"" + entry.filename + "\"", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get horizontal distance to world spawn
+     * @param  location Location
+     * @return          Distance in blocks
+     */
+    private static double getDistanceToSpawn(@NotNull Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return Double.MAX_VALUE;
+        }
+        Location spawn = world.getSpawnLocation();
+        double deltaX = location.getX() - spawn.getX();
+        double deltaZ = location.getZ() - spawn.getZ();
+        return Math.sqrt(deltaX*deltaX + deltaZ*deltaZ);
+    }
+
+    /**
+     * Cache entry to warm-up
+     */
+    private static class Entry {
+        private final String filename;
+        private final int width;
+        private final int height;
+        private final double distance;
+
+        /**
+         * Class constructor
+         * @param filename Image filename
+         * @param width    Width in blocks
+         * @param height   Height in blocks
+         * @param distance Distance to world spawn in blocks
+         */
+        private Entry(@NotNull String filename, int width, int height, double distance) {
+            this.filename = filename;
+            this.width = width;
+            this.height = height;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.josemmo.bukkit.plugin.renderer;
+
+import org.bukkit.map.MapPalette;
+import org.jetbrains.annotations.NotNull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Minecraft map color palette detached from the server, so images can be rendered without one.
+ * <p>
+ * Palette files are exported by the plugin from the server it runs on, and contain the ARGB value of every
+ * map color (4 bytes each, big-endian) sorted by color index.
+ * Colors are matched the same way the server does it, so both produce the same color indexes.
+ */
+public class ColorPalette {
+    private static final int MIN_INDEX = 4; // Indexes below this one are transparent
+    private final int[] colors;
+    private final byte[] cache = new byte[1 << 24]; // Matched index of every RGB color, 0 if not matched yet
+
+    /**
+     * Export server palette to disk
+     * @param  path Path to palette file
+     * @throws IOException if failed to write file
+     */
+    @SuppressWarnings("deprecation")
+    public static void export(@NotNull Path path) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            for (int index=0; index<256; ++index) {
+                int color = MapPalette.getColor((byte) index).getRGB();
+                output.write(ByteBuffer.allocate(4).putInt(color).array());
+            }
+        } catch (IndexOutOfBoundsException __) {
+            // No more colors in palette
+        }
+        byte[] data = output.toByteArray();
+        if (Files.isRegularFile(path) && ByteBuffer.wrap(Files.readAllBytes(path)).equals(ByteBuffer.wrap(data))) {
+            // Palette file is up-to-date
+            return;
+        }
+        Files.write(path, data);
+    }
+
+    /**
+     * Load palette from disk
+     * @param  path Path to palette file
+     * @return      Palette instance
+     * @throws IOException if failed to read file or not a valid palette file
+     */
+    public static @NotNull ColorPalette load(@NotNull Path path) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        if (data.length % 4 != 0 || data.length <= MIN_INDEX*4 || data.length > 256*4) {
+            throw new IOException("Invalid palette file size: " + data.length + " bytes");
+        }
+        int[] colors = new int[data.length / 4];
+        ByteBuffer.wrap(data).asIntBuffer().get(colors);
+        return new ColorPalette(colors);
+    }
+
+    /**
+     * Class constructor
+     * @param colors ARGB color of every index
+     */
+    private ColorPalette(@NotNull int[] colors) {
+        this.colors = colors;
+    }
+
+    /**
+     * Pixel to Minecraft color index
+     * @param  pixel RGBA pixel value
+     * @return       Closest Minecraft color index
+     */
+    public byte pixelToIndex(int pixel) {
+        if ((pixel >>> 24) < 128) {
+            return 0;
+        }
+
+        // Check cached match (races are harmless, as every thread finds the same index)
+        int rgb = pixel & 0xffffff;
+        byte index = cache[rgb];
+        if (index == 0) {
+            index = (byte) findClosestIndex(rgb);
+            cache[rgb] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Find closest color index
+     * @param  rgb RGB color
+     * @return     Color index
+     */
+    private int findClosestIndex(int rgb) {
+        int red = (rgb >> 16) & 0xff;
+        int green = (rgb >> 8) & 0xff;
+        int blue = rgb & 0xff;
+        int bestIndex = MIN_INDEX;
+        double bestDistance = -1;
+        for (int i=MIN_INDEX; i<colors.length; ++i) {
+            int color = colors[i];
+            double meanRed = (red + ((color >> 16) & 0xff)) / 2.0;
+            double deltaRed = red - ((color >> 16) & 0xff);
+            double deltaGreen = green - ((color >> 8) & 0xff);
+            int deltaBlue = blue - (color & 0xff);
+            double distance = (2 + meanRed/256.0) * deltaRed * deltaRed +
+                4.0 * deltaGreen * deltaGreen +
+                (2 + (255 - meanRed)/256.0) * deltaBlue * deltaBlue;
+            if (bestDistance == -1 || distance < bestDistance) {
+                bestDistance = distance;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+}
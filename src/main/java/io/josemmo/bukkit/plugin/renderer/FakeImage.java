@@ -2,6 +2,7 @@ package io.josemmo.bukkit.plugin.renderer;
 
 import com.comphenix.protocol.events.PacketContainer;
 import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.packets.DestroyEntityPacket;
 import io.josemmo.bukkit.plugin.storage.CachedMapsFile;
 import io.josemmo.bukkit.plugin.storage.ImageFile;
 import io.josemmo.bukkit.plugin.utils.DirectionUtils;
@@ -29,7 +30,8 @@ public class FakeImage extends FakeEntity {
     // Image constants
     public static final int MAX_STEPS = 500; // For animated images
     public static final int MIN_DELAY = 1; // Minimum step delay in 50ms intervals (50ms / 50ms)
-    public static final int MAX_DELAY = 50; // Maximum step delay in 50ms intervals (5000ms / 50ms)
+    public static final int MAX_DELAY = 13107; // Maximum step delay in 50ms intervals (655350ms / 50ms, as in GIF)
+    private static final long MAX_ANIMATION_LAG = 1000; // Lag in milliseconds after which missed steps are skipped
     public static final UUID UNKNOWN_PLAYER_ID = new UUID(0, 0);
 
     // Flags
@@ -57,12 +59,13 @@ public class FakeImage extends FakeEntity {
     // Generated values
     private boolean loading = false;
     private FakeItemFrame[] frames = null;
-    private int delay = 0; // Delay between steps in 50ms intervals, "0" for N/A
+    private int[] delays = new int[] {0}; // Delay of each step in 50ms intervals, "0" for N/A
     private int numOfSteps = -1;  // Total number of animation steps
 
     // Animation task attributes
     private @Nullable ScheduledFuture<?> task;
     private int currentStep = -1; // Current animation step
+    private long nextStepTime; // Time of next animation step in milliseconds
 
     /**
      * Get image rotation from player eyesight
@@ -280,11 +283,11 @@ public class FakeImage extends FakeEntity {
     }
 
     /**
-     * Get image delay
-     * @return Image delay in 50ms intervals
+     * Get image delays
+     * @return Delay of each animation step in 50ms intervals
      */
-    public int getDelay() {
-        return delay;
+    public @NotNull int[] getDelays() {
+        return delays;
     }
 
     /**
@@ -366,11 +369,12 @@ public class FakeImage extends FakeEntity {
         FakeMap[][][] maps;
         if (file == null) {
             maps = FakeMap.getErrorMatrix(width, height);
+            delays = new int[] {0};
             LOGGER.warning("File \"" + filename + "\" does not exist");
         } else {
             CachedMapsFile cachedMapsFile = file.getMapsAndSubscribe(this);
             maps = cachedMapsFile.getMaps();
-            delay = cachedMapsFile.getDelay();
+            delays = cachedMapsFile.getDelays();
         }
         numOfSteps = maps[0][0].length;
 
@@ -389,12 +393,10 @@ public class FakeImage extends FakeEntity {
         YamipaPlugin plugin = YamipaPlugin.getInstance();
         boolean isAnimationEnabled = plugin.getRenderer().isAnimationEnabled();
         if (isAnimationEnabled && task == null && hasFlag(FLAG_ANIMATABLE) && numOfSteps > 1) {
-            task = plugin.getScheduler().scheduleAtFixedRate(
-                this::nextStep,
-                0,
-                delay*50L,
-                TimeUnit.MILLISECONDS
-            );
+            synchronized (this) {
+                nextStepTime = System.currentTimeMillis();
+                scheduleNextStep();
+            }
             LOGGER.fine("Spawned animation task for FakeImage#(" + location + "," + face + ")");
         }
 
@@ -405,6 +407,73 @@ public class FakeImage extends FakeEntity {
         }
     }
 
+    /**
+     * Replace maps of live image
+     * <p>
+     * Used when the source image file changes while the image is being shown. Item frames are kept, and only those
+     * whose shown map changed are sent again to observing players.
+     * @param cachedMapsFile New cached maps
+     */
+    public void replaceMaps(@NotNull CachedMapsFile cachedMapsFile) {
+        FakeMap[][][] maps = cachedMapsFile.getMaps();
+        List<FakeItemFrame> changedFrames = new ArrayList<>();
+        int newStep;
+        synchronized (this) {
+            if (frames == null) {
+                // Not loaded, new maps will be used once loaded
+                return;
+            }
+
+            // Swap maps of every item frame
+            int newNumOfSteps = maps[0][0].length;
+            int shownStep = Math.max(currentStep, 0);
+            newStep = (shownStep < newNumOfSteps) ? shownStep : 0;
+            for (int col=0; col<width; col++) {
+                for (int row=0; row<height; row++) {
+                    FakeItemFrame frame = frames[height*col+row];
+                    if (frame.replaceMaps(maps[col][row], shownStep, newStep)) {
+                        changedFrames.add(frame);
+                    }
+                }
+            }
+            delays = cachedMapsFile.getDelays();
+            numOfSteps = newNumOfSteps;
+
+            // Start or stop animation task
+            boolean isAnimationEnabled = YamipaPlugin.getInstance().getRenderer().isAnimationEnabled();
+            boolean mustAnimate = isAnimationEnabled && hasFlag(FLAG_ANIMATABLE) && numOfSteps > 1;
+            if (mustAnimate && task == null) {
+                currentStep = newStep;
+                nextStepTime = System.currentTimeMillis() + delays[currentStep] * 50L;
+                scheduleNextStep();
+            } else if (!mustAnimate && task != null) {
+                task.cancel(true);
+                task = null;
+                currentStep = -1;
+            } else if (task != null) {
+                currentStep = newStep;
+            }
+        }
+        LOGGER.fine("Replaced maps of FakeImage#(" + location + "," + face + "), " + changedFrames.size() + " " +
+            "out of " + (width*height) + " FakeItemFrame(s) changed");
+
+        // Send changed item frames
+        if (changedFrames.isEmpty()) {
+            return;
+        }
+        try {
+            for (Player player : observingPlayers) {
+                List<PacketContainer> packets = new ArrayList<>();
+                for (FakeItemFrame frame : changedFrames) {
+                    packets.addAll(frame.getRenderPackets(player, newStep));
+                }
+                tryToSendPackets(player, packets);
+            }
+        } catch (ConcurrentModificationException e) {
+            // Players that just started observing this image already got the new maps
+        }
+    }
+
     /**
      * Spawn image for a player
      * @param player Player instance
@@ -447,11 +516,15 @@ public class FakeImage extends FakeEntity {
         observingPlayers.add(player);
 
         // Prepare packets to send
+        // NOTE: synchronized as maps might be replaced at any time
         List<PacketContainer> packets = new ArrayList<>();
-        for (FakeItemFrame frame : frames) {
-            packets.add(frame.getSpawnPacket());
-            packets.addAll(frame.getRenderPackets(player, 0));
-            LOGGER.fine("Spawned FakeItemFrame#" + frame.getId() + " for Player#" + playerName);
+        synchronized (this) {
+            int step = Math.max(currentStep, 0);
+            for (FakeItemFrame frame : frames) {
+                packets.add(frame.getSpawnPacket());
+                packets.addAll(frame.getRenderPackets(player, step));
+                LOGGER.fine("Spawned FakeItemFrame#" + frame.getId() + " for Player#" + playerName);
+            }
         }
 
         // Send packets
@@ -504,6 +577,36 @@ public class FakeImage extends FakeEntity {
         }
     }
 
+    /**
+     * Destroy image for all players without sending any packets
+     * <p>
+     * Used for removing images in bulk, as the IDs of destroyed entities can be sent together afterward.
+     * @param destroyedEntityIds Map to add the IDs of destroyed entities to, indexed by player
+     */
+    public void destroyDeferred(@NotNull Map<Player, List<Integer>> destroyedEntityIds) {
+        if (frames == null) {
+            return;
+        }
+        for (Player target : observingPlayers) {
+            List<Integer> ids = destroyedEntityIds.computeIfAbsent(target, __ -> new ArrayList<>());
+            for (FakeItemFrame frame : frames) {
+                ids.add(frame.getId());
+            }
+        }
+        observingPlayers.clear();
+        invalidate();
+    }
+
+    /**
+     * Send packets to destroy entities
+     * @param destroyedEntityIds IDs of destroyed entities, indexed by player
+     */
+    static void sendDestroyPackets(@NotNull Map<Player, List<Integer>> destroyedEntityIds) {
+        for (Map.Entry<Player, List<Integer>> entry : destroyedEntityIds.entrySet()) {
+            tryToSendPackets(entry.getKey(), DestroyEntityPacket.forIds(entry.getValue()));
+        }
+    }
+
     /**
      * Notify player quit from server
      * @param player Player instance
@@ -522,11 +625,13 @@ public class FakeImage extends FakeEntity {
      */
     private void invalidate() {
         // Destroy animation task
-        if (task != null) {
-            task.cancel(true);
-            task = null;
-            currentStep = -1;
-            LOGGER.fine("Destroyed animation task for FakeImage#(" + location + "," + face + ")");
+        synchronized (this) {
+            if (task != null) {
+                task.cancel(true);
+                task = null;
+                currentStep = -1;
+                LOGGER.fine("Destroyed animation task for FakeImage#(" + location + "," + face + ")");
+            }
         }
 
         // Free array of fake item frames
@@ -541,23 +646,64 @@ public class FakeImage extends FakeEntity {
         }
     }
 
+    /**
+     * Schedule next animation step
+     * <p>
+     * Steps are scheduled against an absolute timeline, so the animation does not drift over time.
+     */
+    private synchronized void scheduleNextStep() {
+        long now = System.currentTimeMillis();
+        if (now - nextStepTime > MAX_ANIMATION_LAG) {
+            // Skip missed steps instead of sending them all at once
+            nextStepTime = now;
+        }
+        task = YamipaPlugin.getInstance().getScheduler().schedule(
+            this::nextStep,
+            Math.max(nextStepTime - now, 0),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
     /**
      * Send next animation step to all registered players
+     * <p>
+     * Packets are built while holding the instance lock, but sent after releasing it so that slow sends do not
+     * block replacing maps or destroying the image.
      */
     private void nextStep() {
-        currentStep = (currentStep + 1) % numOfSteps;
-        try {
-            for (Player player : observingPlayers) {
-                List<PacketContainer> packets = new ArrayList<>();
-                for (FakeItemFrame frame : frames) {
-                    packets.addAll(frame.getRenderPackets(player, currentStep));
+        Map<Player, List<PacketContainer>> packetsByPlayer = new HashMap<>();
+        synchronized (this) {
+            // NOTE: synchronized as maps might be replaced at any time
+            int previousStep = currentStep;
+            currentStep = (currentStep + 1) % numOfSteps;
+            try {
+                for (Player player : observingPlayers) {
+                    List<PacketContainer> packets = new ArrayList<>();
+                    for (FakeItemFrame frame : frames) {
+                        if (previousStep < 0 || frame.hasMapChanged(previousStep, currentStep)) {
+                            packets.addAll(frame.getRenderPackets(player, currentStep));
+                        }
+                    }
+                    if (!packets.isEmpty()) {
+                        packetsByPlayer.put(player, packets);
+                    }
                 }
-                tryToSendPackets(player, packets);
+            } catch (ConcurrentModificationException e) {
+                // We can safely ignore this exception as it will just result
+                // in a dropped step (all `observingPlayers` modifications are
+                // called from the same thread).
             }
-        } catch (ConcurrentModificationException e) {
-            // We can safely ignore this exception as it will just result
-            // in a dropped step (all `observingPlayers` modifications are
-            // called from the same thread).
+
+            // Schedule next step (unless animation has been cancelled)
+            if (task != null) {
+                nextStepTime += delays[currentStep] * 50L;
+                scheduleNextStep();
+            }
+        }
+
+        // Send packets
+        for (Map.Entry<Player, List<PacketContainer>> entry : packetsByPlayer.entrySet()) {
+            tryToSendPackets(entry.getKey(), entry.getValue());
         }
     }
 }
@@ -31,7 +31,7 @@ public class FakeItemFrame extends FakeEntity {
     private final BlockFace face;
     private final Rotation rotation;
     private final boolean glowing;
-    private final FakeMap[] maps;
+    private volatile FakeMap[] maps;
 
     /**
      * Get next unused item frame ID
@@ -164,6 +164,29 @@ public class FakeItemFrame extends FakeEntity {
         return packets;
     }
 
+    /**
+     * Has map changed between steps
+     * @param  fromStep Previous step
+     * @param  toStep   Next step
+     * @return          Whether both steps show a different map
+     */
+    public boolean hasMapChanged(int fromStep, int toStep) {
+        return maps[fromStep] != maps[toStep];
+    }
+
+    /**
+     * Replace maps
+     * @param  newMaps  New fake maps to animate
+     * @param  fromStep Step currently shown with the old maps
+     * @param  toStep   Step to show with the new maps
+     * @return          Whether the shown map changed
+     */
+    public boolean replaceMaps(@NotNull FakeMap[] newMaps, int fromStep, int toStep) {
+        boolean changed = (maps[fromStep] != newMaps[toStep]);
+        maps = newMaps;
+        return changed;
+    }
+
     /**
      * Get destroy item frame packet
      * @return Destroy packet
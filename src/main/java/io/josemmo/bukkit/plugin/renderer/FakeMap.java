@@ -13,6 +13,7 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class FakeMap extends FakeEntity {
     public static final int DIMENSION = 128;
@@ -24,6 +25,7 @@ public class FakeMap extends FakeEntity {
     private static @Nullable FakeMap ERROR_INSTANCE;
     private final int id;
     private final byte[] pixels;
+    private final @Nullable Supplier<byte[]> pixelsLoader;
     private final ConcurrentMap<UUID, Long> lastPlayerSendTime = new ConcurrentHashMap<>();
 
     /**
@@ -92,6 +94,7 @@ public class FakeMap extends FakeEntity {
         for (int y=0; y<DIMENSION; y++) {
             System.arraycopy(pixels, startX+(startY+y)*scanSize, this.pixels, y*DIMENSION, DIMENSION);
         }
+        this.pixelsLoader = null;
 
         LOGGER.fine("Created FakeMap#" + this.id);
     }
@@ -103,9 +106,23 @@ public class FakeMap extends FakeEntity {
     public FakeMap(byte[] pixels) {
         this.id = getNextId();
         this.pixels = pixels;
+        this.pixelsLoader = null;
         LOGGER.fine("Created FakeMap#" + this.id);
     }
 
+    /**
+     * Class constructor for streamed maps
+     * <p>
+     * Pixels of streamed maps are not kept in memory, instead they are loaded every time they are needed.
+     * @param pixelsLoader Supplier of the array of Minecraft color indexes
+     */
+    public FakeMap(@NotNull Supplier<byte[]> pixelsLoader) {
+        this.id = getNextId();
+        this.pixels = null;
+        this.pixelsLoader = pixelsLoader;
+        LOGGER.fine("Created streamed FakeMap#" + this.id);
+    }
+
     /**
      * Get map ID
      * @return Map ID
@@ -119,7 +136,15 @@ public class FakeMap extends FakeEntity {
      * @return Array of Minecraft color indexes
      */
     public byte[] getPixels() {
-        return pixels;
+        return (pixelsLoader == null) ? pixels : pixelsLoader.get();
+    }
+
+    /**
+     * Is streamed
+     * @return Whether pixels are loaded every time they are needed
+     */
+    public boolean isStreamed() {
+        return (pixelsLoader != null);
     }
 
     /**
@@ -153,7 +178,7 @@ public class FakeMap extends FakeEntity {
             .setScale(0) // Fully zoomed-in
             .setLocked(true)
             .setArea(DIMENSION, DIMENSION, 0, 0)
-            .setPixels(pixels);
+            .setPixels(getPixels());
         return mapDataPacket;
     }
 }
@@ -0,0 +1,176 @@
+package io.josemmo.bukkit.plugin.renderer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Composites animation frames into an ARGB canvas following GIF disposal rules.
+ * <p>
+ * Frame rectangles are copied directly into the canvas pixel array, and every call to
+ * {@link #draw(BufferedImage, int, int, Disposal)} returns the area of the canvas that changed.
+ */
+public class FrameCompositor {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private @NotNull Disposal pendingDisposal = Disposal.NONE;
+    private @Nullable Rectangle pendingArea;
+    private @Nullable int[] previousPixels;
+
+    /**
+     * Class constructor
+     * @param width  Canvas width in pixels
+     * @param height Canvas height in pixels
+     */
+    public FrameCompositor(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    /**
+     * Get canvas width
+     * @return Canvas width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get canvas height
+     * @return Canvas height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get canvas pixels
+     * @return Canvas ARGB pixels (live array, updated by every draw)
+     */
+    public @NotNull int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Draw frame
+     * @param  frame    Frame image
+     * @param  left     Frame left position inside canvas
+     * @param  top      Frame top position inside canvas
+     * @param  disposal What to do with the frame area after it has been displayed
+     * @return          Canvas area that changed (may be empty)
+     */
+    public @NotNull Rectangle draw(@NotNull BufferedImage frame, int left, int top, @NotNull Disposal disposal) {
+        Rectangle dirtyArea = new Rectangle();
+
+        // Dispose previous frame
+        if (pendingArea != null && !pendingArea.isEmpty()) {
+            if (pendingDisposal == Disposal.RESTORE_TO_BACKGROUND) {
+                for (int y=pendingArea.y, maxY=pendingArea.y+pendingArea.height; y<maxY; ++y) {
+                    int offset = y*width + pendingArea.x;
+                    Arrays.fill(pixels, offset, offset+pendingArea.width, 0);
+                }
+                dirtyArea = pendingArea;
+            } else if (pendingDisposal == Disposal.RESTORE_TO_PREVIOUS && previousPixels != null) {
+                copyArea(previousPixels, pendingArea.width, pixels, width, pendingArea, false);
+                dirtyArea = pendingArea;
+            }
+        }
+        previousPixels = null;
+
+        // Get frame area inside canvas
+        Rectangle frameArea = new Rectangle(left, top, frame.getWidth(), frame.getHeight())
+            .intersection(new Rectangle(0, 0, width, height));
+        if (frameArea.isEmpty()) {
+            pendingDisposal = Disposal.NONE;
+            pendingArea = null;
+            return dirtyArea;
+        }
+
+        // Save frame area before drawing (if needed)
+        if (disposal == Disposal.RESTORE_TO_PREVIOUS) {
+            previousPixels = new int[frameArea.width * frameArea.height];
+            copyArea(pixels, width, previousPixels, frameArea.width, frameArea, true);
+        }
+
+        // Blit frame pixels (fully transparent pixels leave the canvas untouched)
+        int[] row = new int[frameArea.width];
+        for (int y=0; y<frameArea.height; ++y) {
+            frame.getRGB(frameArea.x-left, frameArea.y-top+y, frameArea.width, 1, row, 0, frameArea.width);
+            int offset = (frameArea.y+y)*width + frameArea.x;
+            for (int x=0; x<frameArea.width; ++x) {
+                if ((row[x] >>> 24) != 0) {
+                    pixels[offset + x] = row[x];
+                }
+            }
+        }
+
+        // Schedule disposal of this frame
+        pendingDisposal = disposal;
+        pendingArea = frameArea;
+
+        return dirtyArea.isEmpty() ? frameArea : dirtyArea.union(frameArea);
+    }
+
+    /**
+     * Copy area between canvas and a compact buffer
+     * @param source      Source pixels
+     * @param sourceWidth Source scan size
+     * @param target      Target pixels
+     * @param targetWidth Target scan size
+     * @param area        Area inside canvas
+     * @param fromCanvas  Whether the source is the canvas (<code>true</code>) or the compact buffer
+     */
+    private static void copyArea(
+        @NotNull int[] source,
+        int sourceWidth,
+        @NotNull int[] target,
+        int targetWidth,
+        @NotNull Rectangle area,
+        boolean fromCanvas
+    ) {
+        for (int y=0; y<area.height; ++y) {
+            int canvasY = area.y + y;
+            if (fromCanvas) {
+                System.arraycopy(source, canvasY*sourceWidth + area.x, target, y*targetWidth, area.width);
+            } else {
+                System.arraycopy(source, y*sourceWidth, target, canvasY*targetWidth + area.x, area.width);
+            }
+        }
+    }
+
+    /**
+     * Frame disposal method
+     */
+    public enum Disposal {
+        /** No disposal specified, frame is left in place */
+        NONE,
+        /** Frame is left in place */
+        DO_NOT_DISPOSE,
+        /** Frame area is cleared to transparent */
+        RESTORE_TO_BACKGROUND,
+        /** Frame area is restored to what it was before drawing the frame */
+        RESTORE_TO_PREVIOUS;
+
+        /**
+         * Get disposal from GIF metadata name
+         * @param  name Value of "disposalMethod" attribute
+         * @return      Disposal method
+         */
+        public static @NotNull Disposal fromGifName(@NotNull String name) {
+            switch (name) {
+                case "doNotDispose":
+                    return DO_NOT_DISPOSE;
+                case "restoreToBackgroundColor":
+                    return RESTORE_TO_BACKGROUND;
+                case "restoreToPrevious":
+                    return RESTORE_TO_PREVIOUS;
+                default:
+                    return NONE;
+            }
+        }
+    }
+}
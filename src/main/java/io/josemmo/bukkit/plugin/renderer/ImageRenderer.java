@@ -2,6 +2,7 @@ package io.josemmo.bukkit.plugin.renderer;
 
 import io.josemmo.bukkit.plugin.YamipaPlugin;
 import io.josemmo.bukkit.plugin.utils.CsvConfiguration;
+import io.josemmo.bukkit.plugin.utils.CsvJournal;
 import io.josemmo.bukkit.plugin.utils.Logger;
 import org.bukkit.*;
 import org.bukkit.block.BlockFace;
@@ -22,17 +23,22 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class ImageRenderer implements Listener {
-    private static final long SAVE_INTERVAL = 20L * 90; // In server ticks
+    private static final long SAVE_INTERVAL = 20L; // In server ticks
+    private static final int MIN_COMPACTION_RECORDS = 1000;
     private static final Logger LOGGER = Logger.getLogger("ImageRenderer");
     private final Path configPath;
     private final boolean animateImages;
     private final int maxImageDimension;
+    private final ImageResampler.Filter resampleFilter;
+    private final long maxRenderMemory;
+    private final long maxRenderWork;
+    private final int maxAnimationFps;
+    private final int maxAnimationSteps;
+    private final CsvJournal journal;
     private BukkitTask saveTask;
-    private final AtomicBoolean hasConfigChanged = new AtomicBoolean(false);
     private final ConcurrentMap<WorldAreaId, Set<FakeImage>> images = new ConcurrentHashMap<>();
     private final ConcurrentMap<UUID, Integer> imagesCountByPlayer = new ConcurrentHashMap<>();
     private final Map<Player, WorldAreaId> playersLocation = new HashMap<>();
@@ -42,11 +48,31 @@ public class ImageRenderer implements Listener {
      * @param configPath        Path to configuration file
      * @param animateImages     Whether to animate images or not
      * @param maxImageDimension Maximum image dimension in blocks
+     * @param resampleFilter    Filter used for resizing images
+     * @param maxRenderMemory   Maximum memory in bytes used by a single rendered image, <code>0</code> for no limit
+     * @param maxRenderWork     Maximum number of pixels processed to render an image, <code>0</code> for no limit
+     * @param maxAnimationFps   Maximum animation steps per second
+     * @param maxAnimationSteps Maximum number of animation steps
      */
-    public ImageRenderer(@NotNull Path configPath, boolean animateImages, int maxImageDimension) {
+    public ImageRenderer(
+        @NotNull Path configPath,
+        boolean animateImages,
+        int maxImageDimension,
+        @NotNull ImageResampler.Filter resampleFilter,
+        long maxRenderMemory,
+        long maxRenderWork,
+        int maxAnimationFps,
+        int maxAnimationSteps
+    ) {
         this.configPath = configPath;
+        this.journal = new CsvJournal(configPath, ImageRenderer::getRowKey);
         this.animateImages = animateImages;
         this.maxImageDimension = maxImageDimension;
+        this.resampleFilter = resampleFilter;
+        this.maxRenderMemory = maxRenderMemory;
+        this.maxRenderWork = maxRenderWork;
+        this.maxAnimationFps = maxAnimationFps;
+        this.maxAnimationSteps = maxAnimationSteps;
     }
 
     /**
@@ -65,6 +91,46 @@ public class ImageRenderer implements Listener {
         return maxImageDimension;
     }
 
+    /**
+     * Get resample filter
+     * @return Filter used for resizing images
+     */
+    public @NotNull ImageResampler.Filter getResampleFilter() {
+        return resampleFilter;
+    }
+
+    /**
+     * Get maximum render memory
+     * @return Maximum memory in bytes used by a single rendered image, <code>0</code> for no limit
+     */
+    public long getMaxRenderMemory() {
+        return maxRenderMemory;
+    }
+
+    /**
+     * Get maximum render work
+     * @return Maximum number of pixels processed to render an image, <code>0</code> for no limit
+     */
+    public long getMaxRenderWork() {
+        return maxRenderWork;
+    }
+
+    /**
+     * Get maximum animation frame rate
+     * @return Maximum animation steps per second
+     */
+    public int getMaxAnimationFps() {
+        return maxAnimationFps;
+    }
+
+    /**
+     * Get maximum animation steps
+     * @return Maximum number of animation steps
+     */
+    public int getMaxAnimationSteps() {
+        return maxAnimationSteps;
+    }
+
     /**
      * Start instance
      */
@@ -92,7 +158,11 @@ public class ImageRenderer implements Listener {
         if (saveTask != null) {
             saveTask.cancel();
         }
-        saveConfig();
+        journal.flush();
+        if (journal.getJournalSize() > 0) {
+            journal.compact(this::getAllRows);
+        }
+        journal.close();
 
         // Clear dangling references
         images.clear();
@@ -106,20 +176,20 @@ public class ImageRenderer implements Listener {
     private void loadConfig() {
         if (!Files.isRegularFile(configPath)) {
             LOGGER.info("No placed fake images configuration file found");
-            return;
         }
 
         // Try to load configuration
-        CsvConfiguration config = new CsvConfiguration();
+        Collection<String[]> rows;
         try {
-            config.load(configPath);
+            rows = journal.load();
+            journal.open();
         } catch (IOException e) {
             LOGGER.severe("Failed to load placed fake images from disk", e);
             return;
         }
 
         // Parse each row
-        for (String[] row : config.getRows()) {
+        for (String[] row : rows) {
             try {
                 String filename = row[0];
                 World world = Objects.requireNonNull(YamipaPlugin.getInstance().getServer().getWorld(row[1]));
@@ -152,49 +222,64 @@ public class ImageRenderer implements Listener {
 
     /**
      * Save configuration to disk
+     * <p>
+     * Flushes changes to the journal, and compacts it into the configuration file once it grows larger than the
+     * number of placed images.
      */
-    @SuppressWarnings("ExtractMethodRecommender")
     private void saveConfig() {
-        if (!hasConfigChanged.get()) return;
-
-        // Get all fake images
-        Set<FakeImage> fakeImages = new HashSet<>();
-        for (Set<FakeImage> fakeImagesPart : images.values()) {
-            fakeImages.addAll(fakeImagesPart);
+        journal.flush();
+        if (journal.getJournalSize() >= Math.max(MIN_COMPACTION_RECORDS, size())) {
+            journal.compact(this::getAllRows);
+            LOGGER.info("Saved placed fake images to disk");
         }
+    }
 
-        // Placed here so, if another change comes while saving, we don't lose those changes (will be saved later)
-        hasConfigChanged.set(false);
-
-        // Export to configuration properties
-        CsvConfiguration config = new CsvConfiguration();
-        for (FakeImage fakeImage : fakeImages) {
-            Location location = fakeImage.getLocation();
-            UUID placedById = fakeImage.getPlacedBy().getUniqueId();
-            String[] row = new String[]{
-                fakeImage.getFilename(),
-                location.getChunk().getWorld().getName(),
-                location.getBlockX() + "",
-                location.getBlockY() + "",
-                location.getBlockZ() + "",
-                fakeImage.getBlockFace().name(),
-                fakeImage.getRotation().name(),
-                fakeImage.getWidth() + "",
-                fakeImage.getHeight() + "",
-                (fakeImage.getPlacedAt() == null) ? "" : (fakeImage.getPlacedAt().getTime() / 1000) + "",
-                placedById.equals(FakeImage.UNKNOWN_PLAYER_ID) ? "" : placedById.toString(),
-                fakeImage.getFlags() + ""
-            };
-            config.addRow(row);
+    /**
+     * Get configuration rows of all placed images
+     * @return Configuration rows
+     */
+    private @NotNull Collection<String[]> getAllRows() {
+        List<String[]> rows = new ArrayList<>();
+        for (FakeImage fakeImage : getAllImages()) {
+            rows.add(toRow(fakeImage));
         }
+        return rows;
+    }
 
-        // Write to disk
-        try {
-            config.save(configPath);
-            LOGGER.info("Saved placed fake images to disk");
-        } catch (IOException e) {
-            LOGGER.severe("Failed to save placed fake images to disk", e);
+    /**
+     * Get configuration row of image
+     * @param  fakeImage Fake image instance
+     * @return           Configuration row
+     */
+    private static @NotNull String[] toRow(@NotNull FakeImage fakeImage) {
+        Location location = fakeImage.getLocation();
+        UUID placedById = fakeImage.getPlacedBy().getUniqueId();
+        return new String[]{
+            fakeImage.getFilename(),
+            Objects.requireNonNull(location.getWorld()).getName(),
+            location.getBlockX() + "",
+            location.getBlockY() + "",
+            location.getBlockZ() + "",
+            fakeImage.getBlockFace().name(),
+            fakeImage.getRotation().name(),
+            fakeImage.getWidth() + "",
+            fakeImage.getHeight() + "",
+            (fakeImage.getPlacedAt() == null) ? "" : (fakeImage.getPlacedAt().getTime() / 1000) + "",
+            placedById.equals(FakeImage.UNKNOWN_PLAYER_ID) ? "" : placedById.toString(),
+            fakeImage.getFlags() + ""
+        };
+    }
+
+    /**
+     * Get unique key of configuration row
+     * @param  row Configuration row
+     * @return     World, coordinates and block face of image
+     */
+    private static @NotNull String getRowKey(@NotNull String[] row) {
+        if (row.length < 6) {
+            throw new IllegalArgumentException("Missing image location columns");
         }
+        return String.join(CsvConfiguration.COLUMN_DELIMITER, Arrays.copyOfRange(row, 1, 6));
     }
 
     /**
@@ -213,9 +298,9 @@ public class ImageRenderer implements Listener {
             }).add(image);
         }
 
-        // Set configuration changed flag
+        // Persist change
         if (!isInit) {
-            hasConfigChanged.set(true);
+            journal.add(toRow(image));
         }
 
         // Increment count of placed images by player
@@ -288,27 +373,78 @@ public class ImageRenderer implements Listener {
      * @param image Fake image instance
      */
     public void removeImage(@NotNull FakeImage image) {
-        WorldAreaId[] imageWorldAreaIds = image.getWorldAreaIds();
-
         // Destroy image from all players nearby
         image.destroy();
 
         // Remove image from renderer
-        for (WorldAreaId worldAreaId : imageWorldAreaIds) {
+        if (unregisterImage(image)) {
+            journal.remove(toRow(image));
+        }
+    }
+
+    /**
+     * Remove image from renderer as part of a bulk operation
+     * <p>
+     * Packets are not sent until calling {@link ImageRenderer#commitBulkRemoval(Map)}.
+     * @param  image              Fake image instance
+     * @param  destroyedEntityIds Map to add the IDs of destroyed entities to, indexed by player
+     * @return                    Whether image was removed or not (if already removed)
+     */
+    boolean removeImageDeferred(@NotNull FakeImage image, @NotNull Map<Player, List<Integer>> destroyedEntityIds) {
+        if (!unregisterImage(image)) {
+            return false;
+        }
+        image.destroyDeferred(destroyedEntityIds);
+        journal.remove(toRow(image));
+        return true;
+    }
+
+    /**
+     * Commit images removed as part of a bulk operation
+     * @param destroyedEntityIds IDs of destroyed entities, indexed by player
+     */
+    void commitBulkRemoval(@NotNull Map<Player, List<Integer>> destroyedEntityIds) {
+        FakeImage.sendDestroyPackets(destroyedEntityIds);
+    }
+
+    /**
+     * Unregister image from renderer
+     * @param  image Fake image instance
+     * @return       Whether image was registered or not
+     */
+    private boolean unregisterImage(@NotNull FakeImage image) {
+        boolean found = false;
+        for (WorldAreaId worldAreaId : image.getWorldAreaIds()) {
             Set<FakeImage> worldAreaImages = images.get(worldAreaId);
-            worldAreaImages.remove(image);
+            if (worldAreaImages == null || !worldAreaImages.remove(image)) {
+                continue;
+            }
+            found = true;
             if (worldAreaImages.isEmpty()) {
                 LOGGER.fine("Destroyed WorldArea#(" + worldAreaId + ")");
                 images.remove(worldAreaId);
             }
         }
-
-        // Set configuration changed flag
-        hasConfigChanged.set(true);
+        if (!found) {
+            return false;
+        }
 
         // Decrement count of placed images by player
         UUID placedById = image.getPlacedBy().getUniqueId();
         imagesCountByPlayer.compute(placedById, (__, prev) -> (prev != null && prev > 1) ? prev-1 : null);
+        return true;
+    }
+
+    /**
+     * Get all placed images
+     * @return Set of placed images
+     */
+    public @NotNull Set<FakeImage> getAllImages() {
+        Set<FakeImage> response = new HashSet<>();
+        for (Set<FakeImage> fakeImagesPart : images.values()) {
+            response.addAll(fakeImagesPart);
+        }
+        return response;
     }
 
     /**
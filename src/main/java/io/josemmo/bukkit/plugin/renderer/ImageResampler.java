@@ -0,0 +1,363 @@
+package io.josemmo.bukkit.plugin.renderer;
+
+import io.josemmo.bukkit.plugin.utils.RangeAction;
+import org.jetbrains.annotations.NotNull;
+import java.awt.*;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Separable image resampler working directly on ARGB pixel arrays.
+ * <p>
+ * Pixels are resampled in premultiplied alpha space to prevent dark halos around transparent areas, and the
+ * work is split in bands of output rows that get processed in parallel in the provided pool.
+ */
+public class ImageResampler {
+    private static final int BAND_HEIGHT = 32; // Output rows per parallel work unit
+    private final Filter filter;
+    private final ForkJoinPool pool;
+
+    /**
+     * Class constructor
+     * @param filter Resampling filter
+     * @param pool   Fork/join pool to run the work in
+     */
+    public ImageResampler(@NotNull Filter filter, @NotNull ForkJoinPool pool) {
+        this.filter = filter;
+        this.pool = pool;
+    }
+
+    /**
+     * Get resampling filter
+     * @return Resampling filter
+     */
+    public @NotNull Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Resample image
+     * @param  pixels    Source ARGB pixels
+     * @param  srcWidth  Source width in pixels
+     * @param  srcHeight Source height in pixels
+     * @param  dstWidth  Destination width in pixels
+     * @param  dstHeight Destination height in pixels
+     * @return           Destination ARGB pixels
+     */
+    public @NotNull int[] resample(@NotNull int[] pixels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        int[] output = new int[dstWidth * dstHeight];
+        resample(pixels, srcWidth, srcHeight, output, dstWidth, dstHeight, new Rectangle(0, 0, dstWidth, dstHeight));
+        return output;
+    }
+
+    /**
+     * Resample area of image
+     * @param pixels    Source ARGB pixels
+     * @param srcWidth  Source width in pixels
+     * @param srcHeight Source height in pixels
+     * @param output    Destination ARGB pixels, only the given area gets overwritten
+     * @param dstWidth  Destination width in pixels
+     * @param dstHeight Destination height in pixels
+     * @param area      Destination area to render
+     */
+    public void resample(
+        @NotNull int[] pixels,
+        int srcWidth,
+        int srcHeight,
+        @NotNull int[] output,
+        int dstWidth,
+        int dstHeight,
+        @NotNull Rectangle area
+    ) {
+        area = area.intersection(new Rectangle(0, 0, dstWidth, dstHeight));
+        if (area.isEmpty()) {
+            return;
+        }
+        Coefficients horizontal = new Coefficients(filter, srcWidth, dstWidth);
+        Coefficients vertical = new Coefficients(filter, srcHeight, dstHeight);
+        int fromX = area.x;
+        int toX = area.x + area.width;
+        int firstY = area.y;
+        int lastY = area.y + area.height;
+        int numOfBands = (area.height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        RangeAction.run(pool, 0, numOfBands, band -> {
+            int fromY = firstY + band*BAND_HEIGHT;
+            int toY = Math.min(fromY + BAND_HEIGHT, lastY);
+            resampleBand(pixels, srcWidth, output, dstWidth, horizontal, vertical, fromX, toX, fromY, toY);
+        });
+    }
+
+    /**
+     * Get destination area affected by a change in the source image
+     * @param  srcArea   Changed source area
+     * @param  srcWidth  Source width in pixels
+     * @param  srcHeight Source height in pixels
+     * @param  dstWidth  Destination width in pixels
+     * @param  dstHeight Destination height in pixels
+     * @return           Destination area that needs to be resampled again (may be empty)
+     */
+    public @NotNull Rectangle getAffectedArea(
+        @NotNull Rectangle srcArea,
+        int srcWidth,
+        int srcHeight,
+        int dstWidth,
+        int dstHeight
+    ) {
+        Coefficients horizontal = new Coefficients(filter, srcWidth, dstWidth);
+        Coefficients vertical = new Coefficients(filter, srcHeight, dstHeight);
+        int[] xRange = horizontal.getAffectedRange(srcArea.x, srcArea.x+srcArea.width);
+        int[] yRange = vertical.getAffectedRange(srcArea.y, srcArea.y+srcArea.height);
+        if (xRange[0] >= xRange[1] || yRange[0] >= yRange[1]) {
+            return new Rectangle();
+        }
+        return new Rectangle(xRange[0], yRange[0], xRange[1]-xRange[0], yRange[1]-yRange[0]);
+    }
+
+    /**
+     * Resample band of output rows
+     * @param pixels     Source ARGB pixels
+     * @param srcWidth   Source width in pixels
+     * @param output     Destination ARGB pixels
+     * @param dstWidth   Destination width in pixels
+     * @param horizontal Horizontal coefficients
+     * @param vertical   Vertical coefficients
+     * @param fromX      First output column (inclusive)
+     * @param toX        Last output column (exclusive)
+     * @param fromY      First output row (inclusive)
+     * @param toY        Last output row (exclusive)
+     */
+    private void resampleBand(
+        @NotNull int[] pixels,
+        int srcWidth,
+        @NotNull int[] output,
+        int dstWidth,
+        @NotNull Coefficients horizontal,
+        @NotNull Coefficients vertical,
+        int fromX,
+        int toX,
+        int fromY,
+        int toY
+    ) {
+        // Find source rows needed by this band
+        int firstSrcRow = vertical.start[fromY];
+        int lastSrcRow = firstSrcRow;
+        for (int y=fromY; y<toY; ++y) {
+            firstSrcRow = Math.min(firstSrcRow, vertical.start[y]);
+            lastSrcRow = Math.max(lastSrcRow, vertical.start[y] + vertical.size[y]);
+        }
+
+        // Horizontal pass (premultiplied ARGB, 4 floats per pixel)
+        int tmpStride = (toX - fromX) * 4;
+        float[] tmp = new float[(lastSrcRow - firstSrcRow) * tmpStride];
+        for (int srcY=firstSrcRow; srcY<lastSrcRow; ++srcY) {
+            int srcOffset = srcY * srcWidth;
+            int tmpOffset = (srcY - firstSrcRow) * tmpStride;
+            for (int x=fromX; x<toX; ++x) {
+                float a = 0, r = 0, g = 0, b = 0;
+                int start = horizontal.start[x];
+                int weightOffset = x * horizontal.maxSize;
+                for (int i=0, size=horizontal.size[x]; i<size; ++i) {
+                    int pixel = pixels[srcOffset + start + i];
+                    float weight = horizontal.weights[weightOffset + i];
+                    float alpha = (pixel >>> 24) * weight;
+                    a += alpha;
+                    r += ((pixel >> 16) & 0xff) * alpha;
+                    g += ((pixel >> 8) & 0xff) * alpha;
+                    b += (pixel & 0xff) * alpha;
+                }
+                int index = tmpOffset + (x-fromX)*4;
+                tmp[index] = a;
+                tmp[index+1] = r;
+                tmp[index+2] = g;
+                tmp[index+3] = b;
+            }
+        }
+
+        // Vertical pass
+        for (int y=fromY; y<toY; ++y) {
+            int start = vertical.start[y];
+            int size = vertical.size[y];
+            int weightOffset = y * vertical.maxSize;
+            int dstOffset = y * dstWidth;
+            for (int x=fromX; x<toX; ++x) {
+                float a = 0, r = 0, g = 0, b = 0;
+                for (int i=0; i<size; ++i) {
+                    int index = (start + i - firstSrcRow) * tmpStride + (x-fromX)*4;
+                    float weight = vertical.weights[weightOffset + i];
+                    a += tmp[index] * weight;
+                    r += tmp[index+1] * weight;
+                    g += tmp[index+2] * weight;
+                    b += tmp[index+3] * weight;
+                }
+                output[dstOffset + x] = toPixel(a, r, g, b);
+            }
+        }
+    }
+
+    /**
+     * Convert premultiplied channels to ARGB pixel
+     * @param  a Alpha channel
+     * @param  r Premultiplied red channel
+     * @param  g Premultiplied green channel
+     * @param  b Premultiplied blue channel
+     * @return   ARGB pixel
+     */
+    private static int toPixel(float a, float r, float g, float b) {
+        if (a < 0.5f) {
+            return 0;
+        }
+        return (clamp(a) << 24) | (clamp(r / a) << 16) | (clamp(g / a) << 8) | clamp(b / a);
+    }
+
+    /**
+     * Clamp channel value
+     * @param  value Channel value
+     * @return       Rounded value in the 0-255 range
+     */
+    private static int clamp(float value) {
+        int rounded = Math.round(value);
+        return (rounded < 0) ? 0 : Math.min(rounded, 255);
+    }
+
+    /**
+     * Resampling filter
+     */
+    public enum Filter {
+        /** Area averaging (nearest neighbor when upscaling) */
+        BOX(0.5) {
+            @Override
+            protected double apply(double x) {
+                return (x > -0.5 && x <= 0.5) ? 1 : 0;
+            }
+        },
+        /** Linear interpolation (triangle filter) */
+        BILINEAR(1.0) {
+            @Override
+            protected double apply(double x) {
+                x = Math.abs(x);
+                return (x < 1) ? 1 - x : 0;
+            }
+        },
+        /** Windowed sinc with 3 lobes, sharpest but slowest */
+        LANCZOS(3.0) {
+            @Override
+            protected double apply(double x) {
+                if (x <= -3 || x >= 3) return 0;
+                return sinc(x) * sinc(x / 3);
+            }
+        };
+
+        private final double support;
+
+        /**
+         * Get filter from name
+         * @param  name Case-insensitive filter name
+         * @return      Filter instance
+         * @throws IllegalArgumentException if not a valid filter name
+         */
+        public static @NotNull Filter fromName(@NotNull String name) throws IllegalArgumentException {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * Normalized sinc function
+         * @param  x Input value
+         * @return   sin(PI*x)/(PI*x)
+         */
+        private static double sinc(double x) {
+            if (x == 0) return 1;
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
+
+        /**
+         * Filter constructor
+         * @param support Filter radius at a 1:1 scale
+         */
+        Filter(double support) {
+            this.support = support;
+        }
+
+        /**
+         * Apply filter
+         * @param  x Distance to sample center
+         * @return   Sample weight
+         */
+        protected abstract double apply(double x);
+    }
+
+    /**
+     * Precomputed filter weights for a single axis
+     */
+    private static class Coefficients {
+        private final int[] start;
+        private final int[] size;
+        private final float[] weights;
+        private final int maxSize;
+
+        /**
+         * Class constructor
+         * @param filter  Resampling filter
+         * @param srcSize Source size in pixels
+         * @param dstSize Destination size in pixels
+         */
+        private Coefficients(@NotNull Filter filter, int srcSize, int dstSize) {
+            double scale = (double) srcSize / dstSize;
+            double filterScale = Math.max(scale, 1);
+            double support = filter.support * filterScale;
+            this.maxSize = (int) Math.ceil(support) * 2 + 1;
+            this.start = new int[dstSize];
+            this.size = new int[dstSize];
+            this.weights = new float[dstSize * maxSize];
+
+            for (int i=0; i<dstSize; ++i) {
+                double center = (i + 0.5) * scale;
+                int min = Math.max((int) (center - support + 0.5), 0);
+                int max = Math.min((int) (center + support + 0.5), srcSize);
+                max = Math.min(max, min + maxSize);
+
+                // Compute raw weights
+                double total = 0;
+                double[] raw = new double[max - min];
+                for (int j=min; j<max; ++j) {
+                    double weight = filter.apply((j - center + 0.5) / filterScale);
+                    raw[j-min] = weight;
+                    total += weight;
+                }
+
+                // Fallback to nearest pixel if filter has no coverage
+                if (total == 0) {
+                    min = Math.min((int) center, srcSize-1);
+                    max = min + 1;
+                    raw = new double[] {1};
+                    total = 1;
+                }
+
+                // Normalize weights
+                start[i] = min;
+                size[i] = max - min;
+                for (int j=0; j<size[i]; ++j) {
+                    weights[i*maxSize + j] = (float) (raw[j] / total);
+                }
+            }
+        }
+
+        /**
+         * Get destination range affected by a source range
+         * @param  from First source index (inclusive)
+         * @param  to   Last source index (exclusive)
+         * @return      Destination range as <code>{from, to}</code> (empty if from &gt;= to)
+         */
+        private int[] getAffectedRange(int from, int to) {
+            int min = start.length;
+            int max = 0;
+            for (int i=0; i<start.length; ++i) {
+                if (start[i] < to && start[i] + size[i] > from) {
+                    min = Math.min(min, i);
+                    max = i + 1;
+                }
+            }
+            return new int[] {min, max};
+        }
+    }
+}
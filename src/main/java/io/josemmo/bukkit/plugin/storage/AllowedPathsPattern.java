@@ -0,0 +1,159 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled allowed paths pattern.
+ * <p>
+ * Instances are immutable and shared between all senders with the same expanded pattern. They also remember the
+ * filenames they allowed from the last storage snapshot, so repeated lookups (<i>e.g.,</i> tab completion) do not
+ * need to match every filename again until the images directory changes.
+ */
+class AllowedPathsPattern {
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+    private final @Nullable Pattern pattern;
+    private final boolean valid;
+    private final @NotNull String literalPrefix;
+    private volatile @Nullable AllowedFilenames allowedFilenames;
+
+    /**
+     * Class constructor
+     * @param rawPattern Expanded pattern, empty to allow all paths
+     */
+    AllowedPathsPattern(@NotNull String rawPattern) {
+        Pattern compiledPattern = null;
+        boolean isValid = true;
+        if (!rawPattern.isEmpty()) {
+            try {
+                compiledPattern = Pattern.compile(rawPattern);
+            } catch (PatternSyntaxException __) {
+                isValid = false;
+            }
+        }
+        this.pattern = compiledPattern;
+        this.valid = isValid;
+        this.literalPrefix = isValid ? getLiteralPrefix(rawPattern) : "";
+    }
+
+    /**
+     * Is valid
+     * @return Whether pattern could be compiled
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Matches path
+     * @param  path Path relative to images directory
+     * @return      Whether path is allowed
+     */
+    public boolean matches(@NotNull String path) {
+        if (!valid) {
+            return false;
+        }
+        if (pattern == null) {
+            return true;
+        }
+        return path.startsWith(literalPrefix) && pattern.matcher(path).find();
+    }
+
+    /**
+     * Filter allowed filenames
+     * @param  files Immutable snapshot of registered files
+     * @return       Index of allowed filenames
+     */
+    public @NotNull FilenameIndex filter(@NotNull SortedMap<String, ImageFile> files) {
+        AllowedFilenames cached = allowedFilenames;
+        if (cached != null && cached.files == files) {
+            return cached.index;
+        }
+
+        // Only check filenames starting with the literal prefix of the pattern
+        SortedMap<String, ImageFile> candidates = literalPrefix.isEmpty() ?
+            files :
+            files.subMap(literalPrefix, literalPrefix + Character.MAX_VALUE);
+        List<String> filenames = new ArrayList<>();
+        for (String filename : candidates.keySet()) {
+            if (matches(filename)) {
+                filenames.add(filename);
+            }
+        }
+
+        FilenameIndex index = new FilenameIndex(filenames.toArray(new String[0]));
+        allowedFilenames = new AllowedFilenames(files, index);
+        return index;
+    }
+
+    /**
+     * Get literal prefix
+     * <p>
+     * Finds the literal text every match must start with, as long as the pattern is anchored to the beginning of
+     * the input and has no alternations.
+     * @param  rawPattern Raw pattern
+     * @return            Literal prefix, empty if none
+     */
+    private static @NotNull String getLiteralPrefix(@NotNull String rawPattern) {
+        if (!rawPattern.startsWith("^") || rawPattern.contains("|")) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 1;
+        while (i < rawPattern.length()) {
+            char c = rawPattern.charAt(i);
+            int lastLength = prefix.length();
+            if (rawPattern.startsWith("\\Q", i)) {
+                // Quoted section
+                int end = rawPattern.indexOf("\\E", i+2);
+                String quoted = (end == -1) ? rawPattern.substring(i+2) : rawPattern.substring(i+2, end);
+                prefix.append(quoted);
+                i = (end == -1) ? rawPattern.length() : end + 2;
+                if (quoted.isEmpty()) {
+                    continue;
+                }
+                lastLength = prefix.length() - 1;
+            } else if (c == '\\' && i+1 < rawPattern.length() && !Character.isLetterOrDigit(rawPattern.charAt(i+1))) {
+                // Escaped metacharacter
+                prefix.append(rawPattern.charAt(i+1));
+                i += 2;
+            } else if (REGEX_METACHARACTERS.indexOf(c) == -1) {
+                // Literal character
+                prefix.append(c);
+                ++i;
+            } else {
+                break;
+            }
+
+            // Last character is not part of the prefix if followed by a quantifier
+            if (i < rawPattern.length() && "?*{".indexOf(rawPattern.charAt(i)) > -1) {
+                prefix.setLength(lastLength);
+                break;
+            }
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Allowed filenames from a storage snapshot
+     */
+    private static class AllowedFilenames {
+        private final SortedMap<String, ImageFile> files;
+        private final FilenameIndex index;
+
+        /**
+         * Class constructor
+         * @param files Immutable snapshot of registered files
+         * @param index Index of allowed filenames
+         */
+        private AllowedFilenames(@NotNull SortedMap<String, ImageFile> files, @NotNull FilenameIndex index) {
+            this.files = files;
+            this.index = index;
+        }
+    }
+}
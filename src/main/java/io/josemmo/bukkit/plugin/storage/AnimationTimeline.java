@@ -0,0 +1,121 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+
+/**
+ * Frames of an image file that get rendered as animation steps, along with how long each one is shown.
+ * <p>
+ * When an animation is faster than the maximum frame rate or longer than the maximum number of steps, it is
+ * resampled at regular intervals. Every step then shows the frame that would be visible at that point in time,
+ * so the animation keeps its original duration.
+ */
+public class AnimationTimeline {
+    private final int[] frames;
+    private final int[] durations;
+
+    /**
+     * Create timeline from frame delays
+     * @param  frameDelays Delay of every frame in file in 10ms intervals
+     * @param  maxFps      Maximum number of steps per second
+     * @param  maxSteps    Maximum number of steps
+     * @return             Timeline instance
+     */
+    public static @NotNull AnimationTimeline from(@NotNull int[] frameDelays, int maxFps, int maxSteps) {
+        int numOfFrames = frameDelays.length;
+        maxSteps = Math.max(maxSteps, 1);
+
+        // Get frame timestamps
+        long[] startTimes = new long[numOfFrames];
+        long totalDuration = 0;
+        int shortestDelay = Integer.MAX_VALUE;
+        for (int i=0; i<numOfFrames; ++i) {
+            startTimes[i] = totalDuration;
+            totalDuration += frameDelays[i];
+            shortestDelay = Math.min(shortestDelay, frameDelays[i]);
+        }
+
+        // Keep every frame if within limits
+        double interval = Math.max(100.0 / Math.max(maxFps, 1), (double) totalDuration / maxSteps);
+        if (numOfFrames <= maxSteps && shortestDelay >= interval) {
+            int[] frames = new int[numOfFrames];
+            for (int i=0; i<numOfFrames; ++i) {
+                frames[i] = i;
+            }
+            return new AnimationTimeline(frames, frameDelays.clone());
+        }
+
+        // Sample visible frame at regular intervals
+        int[] frames = new int[maxSteps];
+        long[] slotTimes = new long[maxSteps];
+        int numOfSteps = 0;
+        int frame = 0;
+        for (int slot=0; numOfSteps<maxSteps; ++slot) {
+            long time = Math.round(slot * interval);
+            if (time >= totalDuration) {
+                break;
+            }
+            while (frame+1 < numOfFrames && startTimes[frame+1] <= time) {
+                ++frame;
+            }
+            if (numOfSteps == 0 || frames[numOfSteps-1] != frame) {
+                frames[numOfSteps] = frame;
+                slotTimes[numOfSteps] = time;
+                ++numOfSteps;
+            }
+        }
+
+        // Calculate how long each step is shown
+        int[] durations = new int[numOfSteps];
+        for (int step=0; step<numOfSteps; ++step) {
+            long endTime = (step+1 < numOfSteps) ? slotTimes[step+1] : totalDuration;
+            durations[step] = (int) (endTime - slotTimes[step]);
+        }
+
+        return new AnimationTimeline(Arrays.copyOf(frames, numOfSteps), durations);
+    }
+
+    /**
+     * Class constructor
+     * @param frames    Frame index of every step
+     * @param durations Duration of every step in 10ms intervals
+     */
+    private AnimationTimeline(@NotNull int[] frames, @NotNull int[] durations) {
+        this.frames = frames;
+        this.durations = durations;
+    }
+
+    /**
+     * Get number of steps
+     * @return Number of steps
+     */
+    public int size() {
+        return frames.length;
+    }
+
+    /**
+     * Get frame of step
+     * @param  step Step index
+     * @return      Frame index in image file
+     */
+    public int getFrame(int step) {
+        return frames[step];
+    }
+
+    /**
+     * Get duration of step
+     * @param  step Step index
+     * @return      Duration in 10ms intervals
+     */
+    public int getDuration(int step) {
+        return durations[step];
+    }
+
+    /**
+     * Get last frame
+     * @return Index of last frame that needs to be decoded
+     */
+    public int getLastFrame() {
+        return frames[frames.length-1];
+    }
+}
@@ -0,0 +1,365 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.renderer.ColorPalette;
+import io.josemmo.bukkit.plugin.renderer.FakeImage;
+import io.josemmo.bukkit.plugin.renderer.ImageResampler;
+import io.josemmo.bukkit.plugin.utils.CsvConfiguration;
+import io.josemmo.bukkit.plugin.utils.CsvJournal;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Command-line tool that renders cache files without a running server.
+ * <p>
+ * Produces the same files as {@link CachedMapsFile}, so they can be rendered ahead of time (<i>e.g.,</i> in a build
+ * machine) and then copied to the cache directory of one or more servers.
+ * Map colors are read from the palette file exported by the plugin on startup.
+ */
+public class CacheBuilder {
+    private static final Logger LOGGER = Logger.getLogger("CacheBuilder");
+    private static final Pattern SIZE_PATTERN = Pattern.compile("^([0-9]+)x([0-9]+)$");
+    private static final Set<String> FLAGS = new HashSet<>(Arrays.asList("force", "verbose"));
+    private static final String USAGE = String.join("\n",
+        "Usage: java -cp Yamipa.jar " + CacheBuilder.class.getName() + " [options]",
+        "",
+        "Required options:",
+        "  --images <dir>                Path to images directory",
+        "  --cache <dir>                 Path to output cache directory",
+        "  --palette <file>              Path to palette file exported by the plugin (\"palette.bin\")",
+        "",
+        "Images to render (at least one):",
+        "  --data <file>                 Render sizes from a placed images database file (\"images.dat\")",
+        "  --size <width>x<height>       Render all images at this size in blocks (can be repeated)",
+        "",
+        "Other options:",
+        "  --threads <n>                 Number of threads, \"0\" for all CPU cores (default: 0)",
+        "  --resample-filter <name>      Filter used to resize images (default: bilinear)",
+        "  --max-render-memory <mib>     Maximum MiB of memory used by a single image (default: 512)",
+        "  --max-render-work <mpx>       Maximum megapixels processed for a single image (default: 2000)",
+        "  --max-animation-fps <n>       Maximum frame rate of animated images (default: 20)",
+        "  --max-animation-steps <n>     Maximum number of steps of animated images (default: 500)",
+        "  --force                       Render cache files even if they are up-to-date",
+        "  --verbose                     Log debug messages"
+    );
+
+    /**
+     * Entry point
+     * @param args Command-line arguments
+     */
+    public static void main(@NotNull String[] args) {
+        System.setProperty("java.util.logging.SimpleFormatter.format", "[%4$s] %5$s%6$s%n");
+
+        // Parse arguments
+        Map<String, List<String>> options;
+        Path imagesPath;
+        Path cachePath;
+        Path palettePath;
+        Path dataPath;
+        List<int[]> sizes = new ArrayList<>();
+        int numOfThreads;
+        ImageResampler.Filter resampleFilter;
+        long maxRenderMemory;
+        long maxRenderWork;
+        int maxAnimationFps;
+        int maxAnimationSteps;
+        try {
+            options = parseArguments(args);
+            imagesPath = Paths.get(getRequiredOption(options, "images")).toAbsolutePath().normalize();
+            cachePath = Paths.get(getRequiredOption(options, "cache")).toAbsolutePath().normalize();
+            palettePath = Paths.get(getRequiredOption(options, "palette"));
+            String rawDataPath = getOption(options, "data", null);
+            dataPath = (rawDataPath == null) ? null : Paths.get(rawDataPath);
+            for (String rawSize : options.getOrDefault("size", Collections.emptyList())) {
+                sizes.add(parseSize(rawSize));
+            }
+            if (dataPath == null && sizes.isEmpty()) {
+                throw new IllegalArgumentException("Missing --data or --size option");
+            }
+            numOfThreads = Integer.parseInt(getOption(options, "threads", "0"));
+            if (numOfThreads < 1) {
+                numOfThreads = Runtime.getRuntime().availableProcessors();
+            }
+            resampleFilter = ImageResampler.Filter.fromName(getOption(options, "resample-filter", "bilinear"));
+            maxRenderMemory = Math.max(Long.parseLong(getOption(options, "max-render-memory", "512")), 0) *
+                1024 * 1024;
+            maxRenderWork = Math.max(Long.parseLong(getOption(options, "max-render-work", "2000")), 0) * 1_000_000;
+            maxAnimationFps = Math.min(Math.max(Integer.parseInt(getOption(options, "max-animation-fps", "20")), 1),
+                20);
+            maxAnimationSteps = Math.min(Math.max(Integer.parseInt(getOption(options, "max-animation-steps",
+                String.valueOf(FakeImage.MAX_STEPS))), 1), FakeImage.MAX_STEPS);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage() + "\n");
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Initialize logger
+        java.util.logging.Logger logger = java.util.logging.Logger.getLogger("Yamipa");
+        Logger.useStandaloneLogger(logger, options.containsKey("verbose"));
+
+        // Load color palette
+        ColorPalette palette;
+        try {
+            palette = ColorPalette.load(palettePath);
+        } catch (IOException e) {
+            LOGGER.severe("Failed to load palette file \"" + palettePath + "\"", e);
+            System.exit(1);
+            return;
+        }
+
+        // Find image/dimensions pairs to render
+        Map<String, Job> jobs = new LinkedHashMap<>();
+        try {
+            if (dataPath != null) {
+                addJobsFromData(jobs, dataPath);
+            }
+            if (!sizes.isEmpty()) {
+                addJobsFromSizes(jobs, imagesPath, sizes);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Failed to find images to render", e);
+            System.exit(1);
+            return;
+        }
+
+        // Create render context
+        ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+        RenderContext.setStandalone(new RenderContext(cachePath, resampleFilter, maxRenderMemory, maxRenderWork,
+            maxAnimationFps, maxAnimationSteps, pool, null, palette));
+        LOGGER.info("Rendering " + jobs.size() + " cache file(s) using " + numOfThreads + " thread(s)");
+
+        // Render cache files
+        long startTime = System.currentTimeMillis();
+        boolean force = options.containsKey("force");
+        Map<String, ImageFile> imageFiles = new HashMap<>();
+        AtomicInteger rendered = new AtomicInteger(0);
+        AtomicInteger skipped = new AtomicInteger(0);
+        AtomicInteger failed = new AtomicInteger(0);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            Path path = imagesPath.resolve(job.filename).normalize();
+            if (!path.startsWith(imagesPath) || !Files.isRegularFile(path)) {
+                LOGGER.warning("Image file \"" + job.filename + "\" not found");
+                failed.incrementAndGet();
+                continue;
+            }
+            ImageFile imageFile = imageFiles.computeIfAbsent(job.filename, __ -> new ImageFile(job.filename, path, null));
+            tasks.add(pool.submit(() -> {
+                if (!force && CachedMapsFile.isWarm(imageFile, job.width, job.height)) {
+                    LOGGER.fine("Skipped warm cache file of \"" + job.filename + "\" at " + job);
+                    skipped.incrementAndGet();
+                    return;
+                }
+                if (CachedMapsFile.renderToDisk(imageFile, job.width, job.height)) {
+                    LOGGER.fine("Rendered cache file of \"" + job.filename + "\" at " + job);
+                    rendered.incrementAndGet();
+                } else {
+                    LOGGER.warning("Failed to render cache file of \"" + job.filename + "\" at " + job);
+                    failed.incrementAndGet();
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        pool.shutdown();
+
+        // Print summary
+        long elapsed = (System.currentTimeMillis() - startTime) / 1000;
+        LOGGER.info("Finished in " + elapsed + "s: " + rendered.get() + " rendered, " + skipped.get() +
+            " already warm, " + failed.get() + " failed");
+        if (failed.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse command-line arguments
+     * @param  args Command-line arguments
+     * @return      Option values by name
+     * @throws IllegalArgumentException if arguments are not valid
+     */
+    private static @NotNull Map<String, List<String>> parseArguments(
+        @NotNull String[] args
+    ) throws IllegalArgumentException {
+        Map<String, List<String>> options = new HashMap<>();
+        for (int i=0; i<args.length; ++i) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument \"" + args[i] + "\"");
+            }
+            String name = args[i].substring(2);
+            List<String> values = options.computeIfAbsent(name, __ -> new ArrayList<>());
+            if (FLAGS.contains(name)) {
+                continue;
+            }
+            if (i+1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for option \"--" + name + "\"");
+            }
+            values.add(args[++i]);
+        }
+        return options;
+    }
+
+    /**
+     * Get option value
+     * @param  options      Option values by name
+     * @param  name         Option name
+     * @param  defaultValue Default value
+     * @return              Last value of option or default value if not set
+     */
+    private static @Nullable String getOption(
+        @NotNull Map<String, List<String>> options,
+        @NotNull String name,
+        @Nullable String defaultValue
+    ) {
+        List<String> values = options.get(name);
+        return (values == null || values.isEmpty()) ? defaultValue : values.get(values.size()-1);
+    }
+
+    /**
+     * Get required option value
+     * @param  options Option values by name
+     * @param  name    Option name
+     * @return         Last value of option
+     * @throws IllegalArgumentException if option is not set
+     */
+    private static @NotNull String getRequiredOption(
+        @NotNull Map<String, List<String>> options,
+        @NotNull String name
+    ) throws IllegalArgumentException {
+        String value = getOption(options, name, null);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name + " option");
+        }
+        return value;
+    }
+
+    /**
+     * Parse size
+     * @param  rawSize Size in "{width}x{height}" format
+     * @return         Width and height in blocks
+     * @throws IllegalArgumentException if not a valid size
+     */
+    private static @NotNull int[] parseSize(@NotNull String rawSize) throws IllegalArgumentException {
+        Matcher matcher = SIZE_PATTERN.matcher(rawSize);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid size \"" + rawSize + "\"");
+        }
+        int width = Integer.parseInt(matcher.group(1));
+        int height = Integer.parseInt(matcher.group(2));
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid size \"" + rawSize + "\"");
+        }
+        return new int[] {width, height};
+    }
+
+    /**
+     * Add jobs from placed images database file
+     * <p>
+     * Changes not yet compacted into the database file are read from its journal, just like the plugin does.
+     * @param  jobs     Jobs by key
+     * @param  dataPath Path to placed images database file
+     * @throws IOException if failed to read file
+     */
+    private static void addJobsFromData(@NotNull Map<String, Job> jobs, @NotNull Path dataPath) throws IOException {
+        CsvJournal journal = new CsvJournal(dataPath, CacheBuilder::getDataRowKey);
+        if (!journal.exists()) {
+            throw new IOException("File \"" + dataPath + "\" does not exist");
+        }
+        for (String[] row : journal.load()) {
+            try {
+                String filename = row[0];
+                int width = Math.abs(Integer.parseInt(row[7]));
+                int height = Math.abs(Integer.parseInt(row[8]));
+                Job job = new Job(filename, width, height);
+                jobs.putIfAbsent(job.getKey(), job);
+            } catch (Exception __) {
+                LOGGER.warning("Invalid fake image properties: " + String.join(";", row));
+            }
+        }
+    }
+
+    /**
+     * Get unique key of placed images database row
+     * <p>
+     * Same key as the one used by the image renderer, which cannot be loaded without a server.
+     * @param  row Database row
+     * @return     World, coordinates and block face of image
+     */
+    private static @NotNull String getDataRowKey(@NotNull String[] row) {
+        if (row.length < 6) {
+            throw new IllegalArgumentException("Missing image location columns");
+        }
+        return String.join(CsvConfiguration.COLUMN_DELIMITER, Arrays.copyOfRange(row, 1, 6));
+    }
+
+    /**
+     * Add jobs for all images in directory
+     * @param  jobs       Jobs by key
+     * @param  imagesPath Path to images directory
+     * @param  sizes      Sizes to render
+     * @throws IOException if failed to list files
+     */
+    private static void addJobsFromSizes(
+        @NotNull Map<String, Job> jobs,
+        @NotNull Path imagesPath,
+        @NotNull List<int[]> sizes
+    ) throws IOException {
+        try (Stream<Path> paths = Files.walk(imagesPath)) {
+            paths.filter(Files::isRegularFile).sorted().forEach(path -> {
+                String filename = imagesPath.relativize(path).toString().replaceAll("\\\\", "/");
+                for (int[] size : sizes) {
+                    Job job = new Job(filename, size[0], size[1]);
+                    jobs.putIfAbsent(job.getKey(), job);
+                }
+            });
+        }
+    }
+
+    /**
+     * Image/dimensions pair to render
+     */
+    private static class Job {
+        private final String filename;
+        private final int width;
+        private final int height;
+
+        /**
+         * Class constructor
+         * @param filename Image filename
+         * @param width    Width in blocks
+         * @param height   Height in blocks
+         */
+        private Job(@NotNull String filename, int width, int height) {
+            this.filename = filename;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Get key
+         * @return Unique key
+         */
+        private @NotNull String getKey() {
+            return filename + "/" + width + "-" + height;
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return width + "x" + height + " blocks";
+        }
+    }
+}
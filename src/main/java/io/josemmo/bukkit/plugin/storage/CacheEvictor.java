@@ -0,0 +1,285 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.utils.CsvConfiguration;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Service that keeps the cache directory under a maximum size.
+ * <p>
+ * Last access time of every cache file is kept in an access log, as filesystem access times are usually disabled.
+ * When the cache directory grows past its maximum size, the least recently used files are deleted until it
+ * gets back below a lower watermark. Files used by at least one placed image are never deleted.
+ */
+public class CacheEvictor {
+    private static final long EVICTION_INTERVAL = 20L * 60 * 5; // In server ticks
+    private static final double TARGET_RATIO = 0.9; // Fraction of maximum size to free up to
+    private static final long STALE_TEMP_FILE_AGE = 60L * 60 * 1000; // In milliseconds
+    private static final String ACCESS_LOG_FILENAME = "access.dat";
+    private static final String CACHE_EXT = ".cache";
+    private static final Logger LOGGER = Logger.getLogger("CacheEvictor");
+    private final Path cachePath;
+    private final long maxCacheSize;
+    private final ConcurrentMap<String, Long> accessTimes = new ConcurrentHashMap<>();
+    private BukkitTask evictionTask;
+
+    /**
+     * Class constructor
+     * @param cachePath    Path to directory containing the cached image maps
+     * @param maxCacheSize Maximum size of cache directory in bytes, <code>0</code> for no limit
+     */
+    public CacheEvictor(@NotNull Path cachePath, long maxCacheSize) {
+        this.cachePath = cachePath;
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Start instance
+     */
+    public void start() {
+        loadAccessLog();
+        YamipaPlugin plugin = YamipaPlugin.getInstance();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            deleteLegacyCacheFiles();
+            deleteStaleTempFiles();
+        });
+        if (maxCacheSize > 0) {
+            evictionTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::evict, EVICTION_INTERVAL,
+                EVICTION_INTERVAL);
+        }
+    }
+
+    /**
+     * Stop instance
+     */
+    public void stop() {
+        if (evictionTask != null) {
+            evictionTask.cancel();
+        }
+        saveAccessLog();
+    }
+
+    /**
+     * Record access to cache file
+     * @param path Path to cache file
+     */
+    public void recordAccess(@NotNull Path path) {
+        accessTimes.put(toKey(path), System.currentTimeMillis());
+    }
+
+    /**
+     * Evict least recently used cache files
+     */
+    public void evict() {
+        // Find cache files
+        List<Entry> entries = new ArrayList<>();
+        long totalSize = 0;
+        try (Stream<Path> paths = Files.walk(cachePath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(CACHE_EXT)) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String key = toKey(path);
+                long accessTime = accessTimes.getOrDefault(key, attributes.lastModifiedTime().toMillis());
+                entries.add(new Entry(path, key, attributes.size(), accessTime));
+                totalSize += attributes.size();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Failed to list cache files", e);
+            return;
+        }
+
+        // Forget about files that no longer exist
+        Set<String> existingKeys = new HashSet<>();
+        for (Entry entry : entries) {
+            existingKeys.add(entry.key);
+        }
+        accessTimes.keySet().retainAll(existingKeys);
+
+        // Check whether eviction is needed
+        if (totalSize <= maxCacheSize) {
+            LOGGER.fine("Cache directory uses " + toMib(totalSize) + " out of " + toMib(maxCacheSize) + " MiB");
+            saveAccessLog();
+            return;
+        }
+
+        // Delete least recently used files not in use
+        Set<Path> pathsInUse = YamipaPlugin.getInstance().getStorage().getCachePathsInUse();
+        entries.sort(Comparator.comparingLong(entry -> entry.accessTime));
+        long targetSize = (long) (maxCacheSize * TARGET_RATIO);
+        long freedSize = 0;
+        int deletedFiles = 0;
+        for (Entry entry : entries) {
+            if (totalSize - freedSize <= targetSize) {
+                break;
+            }
+            if (pathsInUse.contains(entry.path)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(entry.path);
+                accessTimes.remove(entry.key);
+                freedSize += entry.size;
+                ++deletedFiles;
+            } catch (IOException e) {
+                LOGGER.warning("Failed to delete cache file \"" + entry.path + "\"", e);
+            }
+        }
+        totalSize -= freedSize;
+        LOGGER.info("Evicted " + deletedFiles + " cache file(s) freeing " + toMib(freedSize) + " MiB, " +
+            "cache directory now uses " + toMib(totalSize) + " out of " + toMib(maxCacheSize) + " MiB");
+        if (totalSize > maxCacheSize) {
+            LOGGER.warning("Cache directory is over its maximum size as remaining files are in use");
+        }
+        saveAccessLog();
+    }
+
+    /**
+     * Delete legacy cache files
+     * <p>
+     * Older versions of the plugin kept all cache files directly inside the cache directory, instead of sharding them
+     * in subdirectories. These files are never read again, so they are deleted regardless of the maximum cache size.
+     */
+    private void deleteLegacyCacheFiles() {
+        int deletedFiles = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(cachePath, "*" + CACHE_EXT)) {
+            for (Path path : paths) {
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                Files.deleteIfExists(path);
+                accessTimes.remove(toKey(path));
+                ++deletedFiles;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Failed to delete legacy cache files from cache directory", e);
+        }
+        if (deletedFiles > 0) {
+            LOGGER.info("Deleted " + deletedFiles + " legacy cache file(s) from cache directory");
+        }
+    }
+
+    /**
+     * Delete stale temporary files
+     * <p>
+     * Cache files are written to temporary files first, which are left behind if the server crashes mid-write.
+     */
+    private void deleteStaleTempFiles() {
+        long maxModifiedTime = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+        int deletedFiles = 0;
+        try (Stream<Path> paths = Files.walk(cachePath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(CachedMapsFile.TEMP_EXT)) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() < maxModifiedTime) {
+                    Files.deleteIfExists(path);
+                    ++deletedFiles;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Failed to delete stale temporary files from cache directory", e);
+        }
+        if (deletedFiles > 0) {
+            LOGGER.info("Deleted " + deletedFiles + " stale temporary file(s) from cache directory");
+        }
+    }
+
+    /**
+     * Load access log from disk
+     */
+    private void loadAccessLog() {
+        Path path = cachePath.resolve(ACCESS_LOG_FILENAME);
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        CsvConfiguration config = new CsvConfiguration();
+        try {
+            config.load(path);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to load cache access log", e);
+            return;
+        }
+        for (String[] row : config.getRows()) {
+            try {
+                accessTimes.merge(row[0], Long.parseLong(row[1]), Math::max);
+            } catch (Exception __) {
+                LOGGER.warning("Invalid cache access log entry: " + String.join(";", row));
+            }
+        }
+    }
+
+    /**
+     * Save access log to disk
+     */
+    private synchronized void saveAccessLog() {
+        CsvConfiguration config = new CsvConfiguration();
+        for (Map.Entry<String, Long> entry : accessTimes.entrySet()) {
+            config.addRow(new String[] {entry.getKey(), String.valueOf(entry.getValue())});
+        }
+        try {
+            config.save(cachePath.resolve(ACCESS_LOG_FILENAME));
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save cache access log", e);
+        }
+    }
+
+    /**
+     * Get access log key
+     * @param  path Path to cache file
+     * @return      Path relative to cache directory
+     */
+    private @NotNull String toKey(@NotNull Path path) {
+        return cachePath.relativize(path).toString().replaceAll("\\\\", "/");
+    }
+
+    /**
+     * Convert bytes to MiB
+     * @param  bytes Size in bytes
+     * @return       Size in MiB
+     */
+    private static long toMib(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /**
+     * Cache file found in disk
+     */
+    private static class Entry {
+        private final Path path;
+        private final String key;
+        private final long size;
+        private final long accessTime;
+
+        /**
+         * Class constructor
+         * @param path       Path to cache file
+         * @param key        Access log key
+         * @param size       Size in bytes
+         * @param accessTime Last access time in milliseconds
+         */
+        private Entry(@NotNull Path path, @NotNull String key, long size, long accessTime) {
+            this.path = path;
+            this.key = key;
+            this.size = size;
+            this.accessTime = accessTime;
+        }
+    }
+}
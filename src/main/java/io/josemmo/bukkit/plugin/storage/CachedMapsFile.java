@@ -1,38 +1,68 @@
 package io.josemmo.bukkit.plugin.storage;
 
-import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.renderer.ColorPalette;
 import io.josemmo.bukkit.plugin.renderer.FakeImage;
 import io.josemmo.bukkit.plugin.renderer.FakeMap;
+import io.josemmo.bukkit.plugin.renderer.FrameCompositor;
+import io.josemmo.bukkit.plugin.renderer.ImageResampler;
 import io.josemmo.bukkit.plugin.utils.Logger;
+import io.josemmo.bukkit.plugin.utils.RangeAction;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
 
 public class CachedMapsFile extends SynchronizedFile {
     private static final String CACHE_EXT = "cache";
+    static final String TEMP_EXT = ".tmp";
     private static final byte[] CACHE_SIGNATURE = new byte[] {0x59, 0x4d, 0x50}; // "YMP"
-    private static final int CACHE_VERSION = 1;
+    private static final int CACHE_VERSION = 4;
+    private static final int HEADER_SIZE = 26; // Signature, version, number of steps and fingerprint
+    static final int SUBSAMPLING_MARGIN = 2; // Decoded images are kept at least 2x larger than the output
     private static final Logger LOGGER = Logger.getLogger("CachedMapsFile");
     private final ImageFile imageFile;
     private final int width;
     private final int height;
+    private final boolean diskOnly;
+    private final Set<Integer> pendingRepairs = ConcurrentHashMap.newKeySet();
+    private final Object streamLock = new Object();
+    private @Nullable FileChannel streamChannel;
+    private @Nullable Path streamPath;
+    private volatile boolean retired = false;
+    private boolean released = false;
     private FakeMap[][][] maps;
-    private int delay;
+    private int[] delays;
+    private int[] frames;
+    private int[] checksums;
+    private Fingerprint fingerprint;
+    private boolean persisted = false;
 
     /**
      * Create instance from image file
@@ -42,9 +72,94 @@ public class CachedMapsFile extends SynchronizedFile {
      * @return           Cached maps instance
      */
     public static @NotNull CachedMapsFile from(@NotNull ImageFile imageFile, int width, int height) {
-        Path cachePath = YamipaPlugin.getInstance().getStorage().getCachePath();
-        Path path = cachePath.resolve(imageFile.getFilename() + "." + width + "-" + height + "." + CACHE_EXT);
-        return new CachedMapsFile(path, imageFile, width, height);
+        return new CachedMapsFile(getPath(imageFile, width, height), imageFile, width, height, false);
+    }
+
+    /**
+     * Render image file to disk
+     * <p>
+     * Unlike {@link #from(ImageFile, int, int)}, no maps are kept in memory and the cache file is always regenerated.
+     * @param  imageFile Image file instance
+     * @param  width     Width in blocks
+     * @param  height    Height in blocks
+     * @return           Whether cache file was written
+     */
+    public static boolean renderToDisk(@NotNull ImageFile imageFile, int width, int height) {
+        return new CachedMapsFile(getPath(imageFile, width, height), imageFile, width, height, true).persisted;
+    }
+
+    /**
+     * Check whether there is an up-to-date cache file in disk
+     * <p>
+     * Only the file header is validated, so this is a lot cheaper than loading the cached maps.
+     * @param  imageFile Image file instance
+     * @param  width     Width in blocks
+     * @param  height    Height in blocks
+     * @return           Whether cache file is warm
+     */
+    public static boolean isWarm(@NotNull ImageFile imageFile, int width, int height) {
+        SynchronizedFile file = new SynchronizedFile(getPath(imageFile, width, height));
+        if (!file.exists()) {
+            return false;
+        }
+        try (RandomAccessFile stream = file.read()) {
+            RenderAdmission admission = RenderAdmission.evaluate(imageFile, width, height);
+            readHeader(stream, Fingerprint.from(imageFile, admission));
+            return true;
+        } catch (IllegalArgumentException | IOException __) {
+            return false;
+        }
+    }
+
+    /**
+     * Get path to cache file
+     * <p>
+     * Cache files are sharded in subdirectories named after the first two characters of the filename hash, so that
+     * no directory ends up with too many files.
+     * @param  imageFile Image file instance
+     * @param  width     Width in blocks
+     * @param  height    Height in blocks
+     * @return           Path to cache file
+     */
+    static @NotNull Path getPath(@NotNull ImageFile imageFile, int width, int height) {
+        String hash = getFilenameHash(imageFile);
+        Path cachePath = RenderContext.getCurrentCachePath();
+        return cachePath.resolve(hash.substring(0, 2)).resolve(hash + "." + width + "-" + height + "." + CACHE_EXT);
+    }
+
+    /**
+     * Get filename hash
+     * @param  imageFile Image file instance
+     * @return           Hexadecimal SHA-1 hash of image filename
+     */
+    private static @NotNull String getFilenameHash(@NotNull ImageFile imageFile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(imageFile.getFilename().getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length*2);
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // SHA-1 is always available
+        }
+    }
+
+    /**
+     * Get fork/join pool for rendering
+     * <p>
+     * Work started from a cache warm-up thread stays in the warm-up pool, so it keeps its low priority. Any other
+     * work (including that started from unrelated fork/join pools) goes to the render pool.
+     * @return Fork/join pool
+     */
+    private static @NotNull ForkJoinPool getPool() {
+        RenderContext context = RenderContext.get();
+        ForkJoinPool currentPool = ForkJoinTask.getPool();
+        if (currentPool != null && currentPool == context.getWarmUpPool()) {
+            return currentPool;
+        }
+        return context.getPool();
     }
 
     /**
@@ -53,10 +168,10 @@ public class CachedMapsFile extends SynchronizedFile {
      */
     public static void deleteAll(@NotNull ImageFile imageFile) {
         String relativeFilename = imageFile.getFilename();
-        Path cachePath = YamipaPlugin.getInstance().getStorage().getCachePath();
-        File baseDirectory = cachePath.resolve(relativeFilename).getParent().toFile();
-        String cachePattern = Pattern.quote(Paths.get(relativeFilename).getFileName().toString()) +
-            "\\.[0-9]+-[0-9]+\\." + CACHE_EXT;
+        String hash = getFilenameHash(imageFile);
+        Path cachePath = RenderContext.getCurrentCachePath();
+        File baseDirectory = cachePath.resolve(hash.substring(0, 2)).toFile();
+        String cachePattern = hash + "\\.[0-9]+-[0-9]+\\." + CACHE_EXT;
 
         // Find cache files to delete
         if (!baseDirectory.exists()) {
@@ -83,12 +198,14 @@ public class CachedMapsFile extends SynchronizedFile {
      * @param imageFile Image file associated to these maps
      * @param width     Width in blocks
      * @param height    Height blocks
+     * @param diskOnly  Whether to only render maps to disk, without loading them
      */
-    private CachedMapsFile(@NotNull Path path, @NotNull ImageFile imageFile, int width, int height) {
+    private CachedMapsFile(@NotNull Path path, @NotNull ImageFile imageFile, int width, int height, boolean diskOnly) {
         super(path);
         this.imageFile = imageFile;
         this.width = width;
         this.height = height;
+        this.diskOnly = diskOnly;
         load();
     }
 
@@ -101,22 +218,111 @@ public class CachedMapsFile extends SynchronizedFile {
     }
 
     /**
-     * Get delay between steps
-     * @return Delay in 50ms intervals or <code>0</code> if not applicable
+     * Get delays of animation steps
+     * @return Delay of each step in 50ms intervals (a single <code>0</code> for still images)
+     */
+    public @NotNull int[] getDelays() {
+        return delays;
+    }
+
+    /**
+     * Release resources
+     * <p>
+     * Closes the file used for streaming maps (if any). Must be called once this instance is no longer used by any
+     * image, after which its streamed maps only show error tiles.
      */
-    public int getDelay() {
-        return delay;
+    public void release() {
+        synchronized (streamLock) {
+            released = true;
+            closeStreamChannel();
+            if (retired && streamPath != null) {
+                deleteTempFile(streamPath);
+            }
+        }
+    }
+
+    /**
+     * Retire cache file
+     * <p>
+     * Moves the cache file of streamed maps out of the way, so a new one can be rendered in its place while this
+     * instance keeps streaming the previous maps until released. Does nothing for maps kept in memory.
+     */
+    public void retire() {
+        synchronized (streamLock) {
+            if (released || retired || streamPath == null) {
+                return;
+            }
+            Path retiredPath = getTempPath();
+            try {
+                if (streamChannel == null || !streamChannel.isOpen()) {
+                    streamChannel = FileChannel.open(streamPath, StandardOpenOption.READ);
+                }
+                Files.move(streamPath, retiredPath);
+                streamPath = retiredPath;
+                retired = true;
+                LOGGER.fine("Retired cache file \"" + path + "\" until its maps get replaced");
+            } catch (IOException e) {
+                LOGGER.warning("Failed to retire cache file \"" + path + "\"", e);
+            }
+        }
+    }
+
+    /**
+     * Reuse maps from previous instance
+     * <p>
+     * Maps with the same pixels as those at the same position in the previous instance are replaced by the latter,
+     * so players that already received them do not need to receive them again.
+     * Streamed maps are never reused, as their previous cache file might no longer exist.
+     * @param previous Previous instance with the same dimensions
+     */
+    public void reuseMapsFrom(@NotNull CachedMapsFile previous) {
+        FakeMap[][][] previousMaps = previous.maps;
+        Map<FakeMap, FakeMap> replacements = new IdentityHashMap<>();
+        for (int col=0; col<width; ++col) {
+            for (int row=0; row<height; ++row) {
+                int numOfSteps = Math.min(maps[col][row].length, previousMaps[col][row].length);
+                for (int step=0; step<numOfSteps; ++step) {
+                    FakeMap newMap = maps[col][row][step];
+                    FakeMap previousMap = previousMaps[col][row][step];
+                    maps[col][row][step] = replacements.computeIfAbsent(newMap, __ -> {
+                        boolean isReusable = !newMap.isStreamed() && !previousMap.isStreamed() &&
+                            Arrays.equals(newMap.getPixels(), previousMap.getPixels());
+                        return isReusable ? previousMap : newMap;
+                    });
+                }
+            }
+        }
     }
 
     /**
      * Load maps
      */
     private void load() {
+        // Make sure image can be rendered
+        RenderAdmission admission = RenderAdmission.evaluate(imageFile, width, height);
+        if (admission.isRefused()) {
+            LOGGER.warning("Refused to render image file \"" + imageFile.getFilename() + "\" at " +
+                width + "x" + height + " blocks: " + admission.getMessage());
+            useErrorMaps();
+            return;
+        }
+        LOGGER.fine("Admitted rendering of cache file \"" + path + "\" with " + admission);
+
+        // Get fingerprint of source file and render parameters
+        try {
+            fingerprint = Fingerprint.from(imageFile, admission);
+        } catch (IOException e) {
+            LOGGER.severe("Failed to read image file \"" + imageFile.getFilename() + "\"", e);
+            useErrorMaps();
+            return;
+        }
+
         // Try to load maps from disk
-        if (exists() && getLastModified() > imageFile.getLastModified()) {
+        if (!diskOnly && exists()) {
             LOGGER.fine("Found warm cache file \"" + path + "\"");
             try {
-                loadFromDisk();
+                loadFromDisk(admission);
+                persisted = true;
                 return;
             } catch (IllegalArgumentException e) {
                 LOGGER.info("Cache file \"" + path + "\" is outdated and will be overwritten");
@@ -128,146 +334,386 @@ public class CachedMapsFile extends SynchronizedFile {
         // Generate maps from image file
         LOGGER.fine("Missed cache file \"" + path + "\"");
         try {
-            generateFromImage();
-            tryToWriteToDisk();
+            generateFromImage(admission);
             return;
         } catch (Exception e) {
             LOGGER.severe("Failed to render image step(s) from file \"" + path + "\"", e);
         }
 
         // Fallback to error matrix
-        maps = FakeMap.getErrorMatrix(width, height);
-        delay = 0;
+        useErrorMaps();
+    }
+
+    /**
+     * Read and validate header
+     * @param  stream      Cache file stream
+     * @param  fingerprint Expected fingerprint
+     * @return             Number of animation steps
+     * @throws IllegalArgumentException if cache file is outdated
+     * @throws IOException if cache file is corrupted
+     */
+    private static int readHeader(
+        @NotNull RandomAccessFile stream,
+        @NotNull Fingerprint fingerprint
+    ) throws IllegalArgumentException, IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        stream.seek(0);
+        stream.readFully(header);
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Validate file signature
+        for (byte expectedByte : CACHE_SIGNATURE) {
+            if (buffer.get() != expectedByte) {
+                throw new IllegalArgumentException("Invalid file signature");
+            }
+        }
+
+        // Validate version number
+        if (buffer.get() != CACHE_VERSION) {
+            throw new IllegalArgumentException("Incompatible file format version");
+        }
+
+        // Get number of animation steps
+        int numOfSteps = buffer.getShort() & 0xffff;
+        if (numOfSteps < 1 || numOfSteps > FakeImage.MAX_STEPS) {
+            throw new IOException("Invalid number of animation steps: " + numOfSteps);
+        }
+
+        // Validate fingerprint
+        if (!Fingerprint.read(buffer).equals(fingerprint)) {
+            throw new IllegalArgumentException("Source file or render parameters changed");
+        }
+
+        return numOfSteps;
+    }
+
+    /**
+     * Use error maps
+     */
+    private void useErrorMaps() {
+        if (!diskOnly) {
+            maps = FakeMap.getErrorMatrix(width, height);
+        }
+        delays = new int[] {0};
     }
 
     /**
      * Load data from disk
+     * @param  admission Render admission decision
      * @throws IllegalArgumentException if cache file is outdated
      * @throws IOException if cache file is corrupted
      */
-    private void loadFromDisk() throws IllegalArgumentException, IOException {
+    private void loadFromDisk(@NotNull RenderAdmission admission) throws IllegalArgumentException, IOException {
+        int tilesPerStep = width * height;
+        List<byte[][]> loadedSteps = new ArrayList<>();
+        Map<Integer, List<Integer>> corruptedTiles = new TreeMap<>();
         try (RandomAccessFile stream = read()) {
-            // Validate file signature
-            for (byte expectedByte : CACHE_SIGNATURE) {
-                if ((byte) stream.read() != expectedByte) {
-                    throw new IllegalArgumentException("Invalid file signature");
+            int numOfSteps = readHeader(stream, fingerprint);
+            if (numOfSteps > admission.getNumOfSteps()) {
+                throw new IllegalArgumentException("Rendered with more animation steps than allowed");
+            }
+            if (stream.length() != getFileLength(numOfSteps)) {
+                throw new IOException("Unexpected file length");
+            }
+
+            // Read metadata and validate its checksum
+            byte[] header = new byte[HEADER_SIZE];
+            stream.seek(0);
+            stream.readFully(header);
+            byte[] rawMetadata = new byte[(int) (getFileLength(numOfSteps) - getDelaysOffset(numOfSteps))];
+            stream.seek(getDelaysOffset(numOfSteps));
+            stream.readFully(rawMetadata);
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            crc.update(rawMetadata, 0, rawMetadata.length-4);
+            ByteBuffer metadata = ByteBuffer.wrap(rawMetadata).order(ByteOrder.LITTLE_ENDIAN);
+            if (metadata.getInt(rawMetadata.length-4) != (int) crc.getValue()) {
+                throw new IOException("Corrupted metadata");
+            }
+
+            // Get delays of animation steps
+            int[] delays = new int[numOfSteps];
+            for (int step=0; step<numOfSteps; ++step) {
+                delays[step] = metadata.getShort() & 0xffff;
+                boolean isValid = (numOfSteps == 1) ?
+                    (delays[step] == 0) :
+                    (delays[step] >= FakeImage.MIN_DELAY && delays[step] <= FakeImage.MAX_DELAY);
+                if (!isValid) {
+                    throw new IOException("Invalid delay for step #" + step + ": " + delays[step]);
                 }
             }
 
-            // Validate version number
-            if ((byte) stream.read() != CACHE_VERSION) {
-                throw new IllegalArgumentException("Incompatible file format version");
+            // Get source frames and tile checksums
+            int[] frames = new int[numOfSteps];
+            for (int step=0; step<numOfSteps; ++step) {
+                frames[step] = metadata.getInt();
             }
+            int[] checksums = new int[numOfSteps*tilesPerStep];
+            for (int index=0; index<checksums.length; ++index) {
+                checksums[index] = metadata.getInt();
+            }
+            this.delays = delays;
+            this.frames = frames;
+            this.checksums = checksums;
 
-            // Get number of animation steps
-            int numOfSteps = stream.read() | (stream.read() << 8);
-            if (numOfSteps < 1 || numOfSteps > FakeImage.MAX_STEPS) {
-                throw new IOException("Invalid number of animation steps: " + numOfSteps);
+            // Stream pixels from disk (if needed)
+            // NOTE: checksums of streamed tiles are validated every time they are read
+            if (admission.isStreamed()) {
+                this.maps = getStreamedMaps(numOfSteps);
+                return;
             }
 
-            // Get delay between steps
-            int delay = 0;
-            if (numOfSteps > 1) {
-                delay = stream.read();
-                if (delay < FakeImage.MIN_DELAY || delay > FakeImage.MAX_DELAY) {
-                    throw new IOException("Invalid delay between steps: " + delay);
+            // Read pixels and validate their checksums
+            stream.seek(HEADER_SIZE);
+            for (int step=0; step<numOfSteps; ++step) {
+                byte[][] tiles = new byte[tilesPerStep][];
+                for (int tileIndex=0; tileIndex<tilesPerStep; ++tileIndex) {
+                    tiles[tileIndex] = new byte[FakeMap.DIMENSION*FakeMap.DIMENSION];
+                    stream.readFully(tiles[tileIndex]);
+                    if (getChecksum(tiles[tileIndex]) != checksums[step*tilesPerStep + tileIndex]) {
+                        corruptedTiles.computeIfAbsent(step, __ -> new ArrayList<>()).add(tileIndex);
+                    }
                 }
+                loadedSteps.add(tiles);
             }
+        }
 
-            // Read pixels
-            FakeMap[][][] maps = new FakeMap[width][height][numOfSteps];
-            for (int col=0; col<width; ++col) {
-                for (int row=0; row<height; ++row) {
-                    for (int step=0; step<numOfSteps; ++step) {
-                        byte[] buffer = new byte[FakeMap.DIMENSION*FakeMap.DIMENSION];
-                        stream.read(buffer);
-                        maps[col][row][step] = new FakeMap(buffer);
-                    }
+        // Regenerate corrupted tiles
+        if (!corruptedTiles.isEmpty()) {
+            int numOfCorruptedTiles = corruptedTiles.values().stream().mapToInt(List::size).sum();
+            LOGGER.warning("Found " + numOfCorruptedTiles + " corrupted tile(s) in cache file \"" + path + "\", " +
+                "regenerating them");
+            for (Map.Entry<Integer, byte[]> entry : repairTiles(corruptedTiles).entrySet()) {
+                int index = entry.getKey();
+                loadedSteps.get(index / tilesPerStep)[index % tilesPerStep] = entry.getValue();
+            }
+        }
+
+        // Share identical tiles with the previous step (reusing maps from unchanged tiles)
+        for (int step=1; step<loadedSteps.size(); ++step) {
+            byte[][] previousTiles = loadedSteps.get(step-1);
+            byte[][] tiles = loadedSteps.get(step);
+            for (int tileIndex=0; tileIndex<tilesPerStep; ++tileIndex) {
+                if (Arrays.equals(tiles[tileIndex], previousTiles[tileIndex])) {
+                    tiles[tileIndex] = previousTiles[tileIndex];
                 }
             }
+        }
+        this.maps = toMaps(loadedSteps);
+    }
+
+    /**
+     * Repair corrupted tiles
+     * <p>
+     * Only the corrupted tiles are rendered again, and then written back to the cache file.
+     * @param  corruptedTiles Indexes of corrupted tiles (sorted by column and row) by animation step
+     * @return                Repaired tile pixels by tile index in file
+     * @throws IOException if failed to repair tiles
+     */
+    private synchronized @NotNull Map<Integer, byte[]> repairTiles(
+        @NotNull Map<Integer, List<Integer>> corruptedTiles
+    ) throws IOException {
+        Map<Integer, byte[]> repairedTiles = regenerateTiles(corruptedTiles);
+
+        // Make sure tiles match the original ones
+        for (Map.Entry<Integer, byte[]> entry : repairedTiles.entrySet()) {
+            if (getChecksum(entry.getValue()) != checksums[entry.getKey()]) {
+                throw new IOException("Regenerated tile #" + entry.getKey() + " does not match its checksum");
+            }
+        }
 
-            // Update instance state
-            this.maps = maps;
-            this.delay = delay;
+        // Write tiles back to disk
+        try (RandomAccessFile stream = write()) {
+            for (Map.Entry<Integer, byte[]> entry : repairedTiles.entrySet()) {
+                stream.seek(getTileOffset(entry.getKey()));
+                stream.write(entry.getValue());
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Failed to write regenerated tiles to cache file \"" + path + "\"", e);
         }
+
+        return repairedTiles;
+    }
+
+    /**
+     * Regenerate tiles from image
+     * <p>
+     * Every image up to the last source frame is still composited, but only the requested tiles are resized and
+     * converted to Minecraft color indexes.
+     * @param  tilesByStep Indexes of tiles (sorted by column and row) by animation step
+     * @return             Tile pixels by tile index in file
+     * @throws IOException if failed to read image file
+     */
+    private @NotNull Map<Integer, byte[]> regenerateTiles(
+        @NotNull Map<Integer, List<Integer>> tilesByStep
+    ) throws IOException {
+        int widthInPixels = width * FakeMap.DIMENSION;
+        int heightInPixels = height * FakeMap.DIMENSION;
+        RenderContext context = RenderContext.get();
+        ColorPalette palette = context.getPalette();
+        ImageResampler resampler = new ImageResampler(context.getResampleFilter(), getPool());
+
+        // Group steps by source frame
+        Map<Integer, List<Integer>> stepsByFrame = new HashMap<>();
+        int lastFrame = 0;
+        for (int step : tilesByStep.keySet()) {
+            stepsByFrame.computeIfAbsent(frames[step], __ -> new ArrayList<>()).add(step);
+            lastFrame = Math.max(lastFrame, frames[step]);
+        }
+
+        // Render requested tiles
+        Map<Integer, byte[]> response = new HashMap<>();
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile.read())) {
+            ImageReader reader = ImageIO.getImageReaders(inputStream).next();
+            reader.setInput(inputStream);
+            String format = reader.getFormatName().toLowerCase();
+            ImageReadParam readParam = getReadParam(reader, format);
+            int decodedWidth = getDecodedSize(reader.getWidth(0), readParam.getSourceXSubsampling());
+            int decodedHeight = getDecodedSize(reader.getHeight(0), readParam.getSourceYSubsampling());
+            FrameCompositor compositor = new FrameCompositor(decodedWidth, decodedHeight);
+            int[] rgbaPixels = new int[widthInPixels * heightInPixels];
+            for (int frame=0; frame<=lastFrame; ++frame) {
+                FrameMetadata metadata = FrameMetadata.read(reader, format, frame);
+                BufferedImage image = reader.read(frame, readParam);
+                compositor.draw(image, metadata.getLeft(), metadata.getTop(), metadata.getDisposal());
+                image.flush();
+                for (int step : stepsByFrame.getOrDefault(frame, Collections.emptyList())) {
+                    for (int tileIndex : tilesByStep.get(step)) {
+                        int col = tileIndex / height;
+                        int row = tileIndex % height;
+                        Rectangle tilePixels = new Rectangle(col*FakeMap.DIMENSION, row*FakeMap.DIMENSION,
+                            FakeMap.DIMENSION, FakeMap.DIMENSION);
+                        resampler.resample(compositor.getPixels(), decodedWidth, decodedHeight, rgbaPixels,
+                            widthInPixels, heightInPixels, tilePixels);
+                        response.put(step*width*height + tileIndex,
+                            toTile(rgbaPixels, widthInPixels, col, row, palette));
+                    }
+                }
+            }
+            reader.dispose();
+        }
+        return response;
     }
 
     /**
      * Generate data from image
+     * <p>
+     * Maps are kept in memory and then persisted to disk, unless the admission decision requires streaming.
+     * In that case, every step gets written to disk as soon as it is rendered.
+     * <p>
+     * Consecutive frames that render to the same maps are merged into a single, longer step.
+     * @param  admission Render admission decision
      * @throws IOException if an I/O error occurred
      * @throws RuntimeException if failed to render image steps
      */
-    private void generateFromImage() throws IOException, RuntimeException {
+    private void generateFromImage(@NotNull RenderAdmission admission) throws IOException, RuntimeException {
         int widthInPixels = width * FakeMap.DIMENSION;
         int heightInPixels = height * FakeMap.DIMENSION;
+        AnimationTimeline timeline = admission.getTimeline();
+        boolean streamed = admission.isStreamed();
+        RenderContext context = RenderContext.get();
+        ColorPalette palette = context.getPalette();
+        ForkJoinPool pool = getPool();
+        ImageResampler resampler = new ImageResampler(context.getResampleFilter(), pool);
+
+        // Prepare temporary output file (if streaming)
+        Path tempPath = streamed ? getTempPath() : null;
 
         // Render image steps in Minecraft color palette
-        List<byte[]> renderedImages = new ArrayList<>();
-        Map<Integer, Integer> delays = new HashMap<>();
-        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile.read())) {
+        List<byte[][]> renderedSteps = new ArrayList<>();
+        List<int[]> stepChecksums = new ArrayList<>();
+        List<Integer> stepFrames = new ArrayList<>();
+        List<Integer> stepDurations = new ArrayList<>(); // In 10ms intervals
+        int timelineStep = 0;
+        try (
+            ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile.read());
+            RandomAccessFile outputStream = (tempPath == null) ? null : new RandomAccessFile(tempPath.toFile(), "rw")
+        ) {
             ImageReader reader = ImageIO.getImageReaders(inputStream).next();
             reader.setInput(inputStream);
             String format = reader.getFormatName().toLowerCase();
+            ImageReadParam readParam = getReadParam(reader, format);
+            int originalWidth = getDecodedSize(reader.getWidth(0), readParam.getSourceXSubsampling());
+            int originalHeight = getDecodedSize(reader.getHeight(0), readParam.getSourceYSubsampling());
 
-            // Create temporary canvas
-            int originalWidth = reader.getWidth(0);
-            int originalHeight = reader.getHeight(0);
-            BufferedImage tmpImage = new BufferedImage(originalWidth, originalHeight, BufferedImage.TYPE_4BYTE_ABGR);
-            Graphics2D tmpGraphics = tmpImage.createGraphics();
-            tmpGraphics.setBackground(new Color(0, 0, 0, 0));
-
-            // Create temporary scaled canvas (for resizing)
-            BufferedImage tmpScaledImage = new BufferedImage(widthInPixels, heightInPixels, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D tmpScaledGraphics = tmpScaledImage.createGraphics();
-            tmpScaledGraphics.setBackground(new Color(0, 0, 0, 0));
+            // Create compositor canvas and resized output buffer
+            FrameCompositor compositor = new FrameCompositor(originalWidth, originalHeight);
+            int[] rgbaPixels = new int[widthInPixels * heightInPixels];
+            byte[][] previousTiles = null;
+            Rectangle dirtyArea = new Rectangle();
 
             // Read images from file
-            for (int step=0; step<FakeImage.MAX_STEPS; ++step) {
+            // NOTE: every image up to the last step is composited, but only those in the timeline are rendered
+            for (int frame=0; frame<=timeline.getLastFrame(); ++frame) {
                 try {
                     // Extract step metadata
-                    int imageLeft = 0;
-                    int imageTop = 0;
-                    boolean disposePrevious = false;
-                    if (format.equals("gif")) {
-                        IIOMetadata metadata = reader.getImageMetadata(step);
-                        String formatName = metadata.getNativeMetadataFormatName();
-                        IIOMetadataNode metadataRoot = (IIOMetadataNode) metadata.getAsTree(formatName);
-                        for (int i=0; i<metadataRoot.getLength(); ++i) {
-                            String nodeName = metadataRoot.item(i).getNodeName();
-                            if (nodeName.equalsIgnoreCase("ImageDescriptor")) {
-                                IIOMetadataNode descriptorNode = (IIOMetadataNode) metadataRoot.item(i);
-                                imageLeft = Integer.parseInt(descriptorNode.getAttribute("imageLeftPosition"));
-                                imageTop = Integer.parseInt(descriptorNode.getAttribute("imageTopPosition"));
-                            } else if (nodeName.equalsIgnoreCase("GraphicControlExtension")) {
-                                IIOMetadataNode controlExtensionNode = (IIOMetadataNode) metadataRoot.item(i);
-                                int delay = Integer.parseInt(controlExtensionNode.getAttribute("delayTime"));
-                                delays.compute(delay, (__, count) -> (count == null) ? 1 : count + 1);
-                                disposePrevious = controlExtensionNode.getAttribute("disposalMethod").startsWith("restore");
-                            }
-                        }
+                    FrameMetadata metadata = FrameMetadata.read(reader, format, frame);
+
+                    // Paint step image over canvas
+                    BufferedImage image = reader.read(frame, readParam);
+                    Rectangle frameDirtyArea = compositor.draw(image, metadata.getLeft(), metadata.getTop(),
+                        metadata.getDisposal());
+                    dirtyArea = dirtyArea.isEmpty() ? frameDirtyArea : dirtyArea.union(frameDirtyArea);
+                    image.flush();
+
+                    // Skip frames that are not rendered
+                    if (timeline.getFrame(timelineStep) != frame) {
+                        continue;
                     }
+                    int stepDuration = timeline.getDuration(timelineStep++);
 
-                    // Clear temporary canvases (if needed)
-                    if (disposePrevious) {
-                        tmpGraphics.clearRect(0, 0, originalWidth, originalHeight);
-                        tmpScaledGraphics.clearRect(0, 0, widthInPixels, heightInPixels);
+                    // Find output tiles affected by this frame
+                    Rectangle dirtyTiles;
+                    if (previousTiles == null) {
+                        dirtyTiles = new Rectangle(0, 0, width, height);
+                    } else {
+                        Rectangle affectedArea = resampler.getAffectedArea(dirtyArea, originalWidth, originalHeight,
+                            widthInPixels, heightInPixels);
+                        dirtyTiles = toTileArea(affectedArea);
                     }
+                    dirtyArea = new Rectangle();
 
-                    // Paint step image over temporary canvas
-                    BufferedImage image = reader.read(step);
-                    tmpGraphics.drawImage(image, imageLeft, imageTop, null);
-                    image.flush();
+                    // Resize affected tiles
+                    Rectangle dirtyPixels = new Rectangle(
+                        dirtyTiles.x * FakeMap.DIMENSION,
+                        dirtyTiles.y * FakeMap.DIMENSION,
+                        dirtyTiles.width * FakeMap.DIMENSION,
+                        dirtyTiles.height * FakeMap.DIMENSION
+                    );
+                    resampler.resample(compositor.getPixels(), originalWidth, originalHeight, rgbaPixels,
+                        widthInPixels, heightInPixels, dirtyPixels);
 
-                    // Resize image and get pixels
-                    tmpScaledGraphics.drawImage(tmpImage, 0, 0, widthInPixels, heightInPixels, null);
-                    int[] rgbaPixels = ((DataBufferInt) tmpScaledImage.getRaster().getDataBuffer()).getData();
+                    // Slice tiles and convert RGBA pixels to Minecraft color indexes
+                    // NOTE: tiles that end up with the same pixels are shared with the previous step
+                    byte[][] renderedTiles = (previousTiles == null) ?
+                        new byte[width*height][] :
+                        Arrays.copyOf(previousTiles, previousTiles.length);
+                    RangeAction.run(pool, 0, dirtyTiles.width*dirtyTiles.height, index -> {
+                        int col = dirtyTiles.x + index / dirtyTiles.height;
+                        int row = dirtyTiles.y + index % dirtyTiles.height;
+                        int tileIndex = col*height + row;
+                        byte[] tile = toTile(rgbaPixels, widthInPixels, col, row, palette);
+                        if (!Arrays.equals(tile, renderedTiles[tileIndex])) {
+                            renderedTiles[tileIndex] = tile;
+                        }
+                    });
+
+                    // Merge with previous step if nothing changed
+                    if (previousTiles != null && Arrays.equals(previousTiles, renderedTiles)) {
+                        addToLastStep(stepDurations, stepDuration);
+                        continue;
+                    }
+                    previousTiles = renderedTiles;
 
-                    // Convert RGBA pixels to Minecraft color indexes
-                    byte[] renderedImage = new byte[widthInPixels * heightInPixels];
-                    IntStream.range(0, rgbaPixels.length)
-                        .parallel()
-                        .forEach(pixelIndex -> renderedImage[pixelIndex] = FakeMap.pixelToIndex(rgbaPixels[pixelIndex]));
-                    renderedImages.add(renderedImage);
+                    // Keep tiles in memory or write them to disk
+                    int step = stepDurations.size();
+                    stepDurations.add(stepDuration);
+                    stepFrames.add(frame);
+                    if (outputStream == null) {
+                        renderedSteps.add(renderedTiles);
+                    } else {
+                        stepChecksums.add(writeTiles(outputStream.getChannel(), step, renderedTiles));
+                    }
                 } catch (IndexOutOfBoundsException __) {
                     // No more steps to read
                     break;
@@ -276,68 +722,589 @@ public class CachedMapsFile extends SynchronizedFile {
 
             // Free resources
             reader.dispose();
-            tmpGraphics.dispose();
-            tmpImage.flush();
-            tmpScaledGraphics.dispose();
-            tmpScaledImage.flush();
+
+            // Quantize animation timeline
+            if (stepDurations.isEmpty()) {
+                throw new IOException("Image file has no steps");
+            }
+            delays = toDelays(stepDurations);
+            frames = stepFrames.stream().mapToInt(Integer::intValue).toArray();
+            LOGGER.fine("Rendered " + timelineStep + " out of " + admission.getTotalSteps() + " image step(s) " +
+                "into " + delays.length + " animation step(s) for cache file \"" + path + "\"");
+
+            // Finish streamed file
+            if (outputStream != null) {
+                checksums = stepChecksums.stream().flatMapToInt(Arrays::stream).toArray();
+                outputStream.setLength(getFileLength(delays.length));
+                writeMetadata(outputStream);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (tempPath != null) {
+                deleteTempFile(tempPath);
+            }
+            throw e;
         }
 
-        // Get most occurring delay (mode)
-        int delay = 0;
-        if (renderedImages.size() > 1) {
-            delay = Collections.max(delays.entrySet(), Map.Entry.comparingByValue()).getKey();
-            delay = Math.round(delay * 0.2f); // (delay * 10) / 50
-            delay = Math.min(Math.max(delay, FakeImage.MIN_DELAY), FakeImage.MAX_DELAY);
+        // Replace cache file with streamed one
+        if (tempPath != null) {
+            try {
+                commitTempFile(tempPath);
+            } catch (IOException e) {
+                deleteTempFile(tempPath);
+                throw e;
+            }
+            persisted = true;
+            if (!diskOnly) {
+                maps = getStreamedMaps(delays.length);
+            }
+            return;
         }
 
-        // Instantiate fake maps from image steps
-        FakeMap[][][] maps = new FakeMap[width][height][renderedImages.size()];
-        IntStream.range(0, renderedImages.size()).forEach(i -> {
+        // Instantiate fake maps from image steps (reusing maps from unchanged tiles)
+        if (!diskOnly) {
+            maps = toMaps(renderedSteps);
+        }
+        persisted = tryToWriteToDisk(renderedSteps);
+    }
+
+    /**
+     * Get read parameters for image file
+     * <p>
+     * Oversized still images are decoded at a lower resolution.
+     * NOTE: animated GIFs are excluded as frames are positioned relative to the original canvas
+     * @param  reader Image reader
+     * @param  format Image format name
+     * @return        Read parameters
+     * @throws IOException if failed to read image dimensions
+     */
+    private @NotNull ImageReadParam getReadParam(@NotNull ImageReader reader, @NotNull String format)
+    throws IOException {
+        ImageReadParam readParam = reader.getDefaultReadParam();
+        if (!format.equals("gif")) {
+            int periodX = Math.max(reader.getWidth(0) / (width * FakeMap.DIMENSION * SUBSAMPLING_MARGIN), 1);
+            int periodY = Math.max(reader.getHeight(0) / (height * FakeMap.DIMENSION * SUBSAMPLING_MARGIN), 1);
+            if (periodX > 1 || periodY > 1) {
+                readParam.setSourceSubsampling(periodX, periodY, 0, 0);
+                LOGGER.fine("Subsampling image file \"" + imageFile.getFilename() + "\" by " +
+                    periodX + "x" + periodY + " while decoding");
+            }
+        }
+        return readParam;
+    }
+
+    /**
+     * Get decoded image size
+     * @param  originalSize Original size in pixels
+     * @param  period       Subsampling period
+     * @return              Decoded size in pixels
+     */
+    private static int getDecodedSize(int originalSize, int period) {
+        return (originalSize + period - 1) / period;
+    }
+
+    /**
+     * Instantiate fake maps from rendered steps
+     * <p>
+     * Tiles that are shared with the previous step reuse the same map.
+     * @param  renderedSteps Tile pixels of every step sorted by column and row
+     * @return               Tri-dimensional array of maps (column, row, step)
+     */
+    private @NotNull FakeMap[][][] toMaps(@NotNull List<byte[][]> renderedSteps) {
+        int numOfSteps = renderedSteps.size();
+        FakeMap[][][] maps = new FakeMap[width][height][numOfSteps];
+        for (int step=0; step<numOfSteps; ++step) {
+            byte[][] renderedTiles = renderedSteps.get(step);
+            byte[][] previousTiles = (step > 0) ? renderedSteps.get(step-1) : null;
             for (int col=0; col<width; col++) {
                 for (int row=0; row<height; row++) {
-                    maps[col][row][i] = new FakeMap(
-                        renderedImages.get(i),
-                        widthInPixels,
-                        col*FakeMap.DIMENSION,
-                        row*FakeMap.DIMENSION
-                    );
+                    int index = col*height + row;
+                    maps[col][row][step] = (previousTiles != null && previousTiles[index] == renderedTiles[index]) ?
+                        maps[col][row][step-1] :
+                        new FakeMap(renderedTiles[index]);
                 }
             }
-        });
+        }
+        return maps;
+    }
 
-        // Update instance state
-        this.maps = maps;
-        this.delay = delay;
+    /**
+     * Add duration to last step
+     * @param stepDurations Step durations
+     * @param duration      Duration to add
+     */
+    private static void addToLastStep(@NotNull List<Integer> stepDurations, int duration) {
+        int lastIndex = stepDurations.size() - 1;
+        stepDurations.set(lastIndex, stepDurations.get(lastIndex) + duration);
     }
 
     /**
-     * Try to write data to disk
+     * Convert step durations to delays
+     * <p>
+     * Steps are placed in a timeline and then snapped to 50ms ticks, so rounding errors do not accumulate
+     * and the animation keeps its original speed.
+     * @param  stepDurations Step durations in 10ms intervals
+     * @return               Step delays in 50ms intervals
      */
-    private void tryToWriteToDisk() {
-        mkdirs();
-        try (RandomAccessFile stream = write()) {
-            int numOfSteps = maps[0][0].length;
-
-            // Add file header
-            stream.write(CACHE_SIGNATURE); // "YMP" signature
-            stream.write(CACHE_VERSION);   // Format version
-            stream.write(numOfSteps & 0xff);        // Number of animation steps (first byte)
-            stream.write((numOfSteps >> 8) & 0xff); // Number of animation steps (second byte)
-            if (numOfSteps > 1) {
-                stream.write(delay);
-            }
-
-            // Add pixels
-            //noinspection ForLoopReplaceableByForEach
-            for (int col=0; col<maps.length; ++col) {
-                for (int row=0; row<maps[0].length; ++row) {
-                    for (int step=0; step<numOfSteps; ++step) {
-                        stream.write(maps[col][row][step].getPixels());
-                    }
+    private static @NotNull int[] toDelays(@NotNull List<Integer> stepDurations) {
+        int numOfSteps = stepDurations.size();
+        if (numOfSteps == 1) {
+            return new int[] {0};
+        }
+        int[] delays = new int[numOfSteps];
+        long elapsedTime = 0;
+        long currentTick = 0;
+        for (int step=0; step<numOfSteps; ++step) {
+            elapsedTime += stepDurations.get(step);
+            long targetTick = Math.round(elapsedTime / 5.0);
+            int delay = (int) Math.min(Math.max(targetTick - currentTick, FakeImage.MIN_DELAY), FakeImage.MAX_DELAY);
+            currentTick += delay;
+            delays[step] = delay;
+        }
+        return delays;
+    }
+
+    /**
+     * Get tiles covering a pixel area
+     * @param  area Area in output pixels
+     * @return      Area in tiles (may be empty)
+     */
+    private @NotNull Rectangle toTileArea(@NotNull Rectangle area) {
+        if (area.isEmpty()) {
+            return new Rectangle();
+        }
+        int fromCol = area.x / FakeMap.DIMENSION;
+        int fromRow = area.y / FakeMap.DIMENSION;
+        int toCol = Math.min((area.x + area.width + FakeMap.DIMENSION - 1) / FakeMap.DIMENSION, width);
+        int toRow = Math.min((area.y + area.height + FakeMap.DIMENSION - 1) / FakeMap.DIMENSION, height);
+        return new Rectangle(fromCol, fromRow, toCol-fromCol, toRow-fromRow);
+    }
+
+    /**
+     * Slice tile from image and convert it to Minecraft color indexes
+     * @param  rgbaPixels RGBA pixels of the entire image
+     * @param  scanSize   Image width in pixels
+     * @param  col        Tile column
+     * @param  row        Tile row
+     * @param  palette    Color palette or NULL to use the server one
+     * @return            Tile pixels as Minecraft color indexes
+     */
+    private static byte[] toTile(int[] rgbaPixels, int scanSize, int col, int row, @Nullable ColorPalette palette) {
+        byte[] tile = new byte[FakeMap.DIMENSION*FakeMap.DIMENSION];
+        int startX = col * FakeMap.DIMENSION;
+        int startY = row * FakeMap.DIMENSION;
+        for (int y=0; y<FakeMap.DIMENSION; ++y) {
+            int offset = startX + (startY+y)*scanSize;
+            for (int x=0; x<FakeMap.DIMENSION; ++x) {
+                int pixel = rgbaPixels[offset + x];
+                tile[y*FakeMap.DIMENSION + x] = (palette == null) ?
+                    FakeMap.pixelToIndex(pixel) :
+                    palette.pixelToIndex(pixel);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Get maps streamed from disk
+     * <p>
+     * The cache file is kept open until this instance gets released.
+     * @param  numOfSteps Number of animation steps
+     * @return            Tri-dimensional array of maps (column, row, step)
+     * @throws IOException if failed to open cache file
+     */
+    private @NotNull FakeMap[][][] getStreamedMaps(int numOfSteps) throws IOException {
+        synchronized (streamLock) {
+            closeStreamChannel();
+            streamChannel = FileChannel.open(path, StandardOpenOption.READ);
+            streamPath = path;
+        }
+        FakeMap[][][] maps = new FakeMap[width][height][numOfSteps];
+        for (int col=0; col<width; ++col) {
+            for (int row=0; row<height; ++row) {
+                for (int step=0; step<numOfSteps; ++step) {
+                    int tileIndex = step*width*height + col*height + row;
+                    maps[col][row][step] = new FakeMap(() -> readTile(tileIndex));
                 }
             }
+        }
+        return maps;
+    }
+
+    /**
+     * Read tile from disk
+     * <p>
+     * Tiles are read while sending packets, so corrupted tiles are not regenerated right away. Instead, they are
+     * shown as error tiles until repaired in the render pool.
+     * @param  tileIndex Tile index in file
+     * @return           Tile pixels (or error pixels in case of failure)
+     */
+    private @NotNull byte[] readTile(int tileIndex) {
+        byte[] pixels = new byte[FakeMap.DIMENSION*FakeMap.DIMENSION];
+        try {
+            readFully(ByteBuffer.wrap(pixels), getTileOffset(tileIndex));
+        } catch (ClosedChannelException __) {
+            // Instance was released
+            Arrays.fill(pixels, FakeMap.pixelToIndex(Color.RED.getRGB()));
+            return pixels;
         } catch (IOException e) {
+            LOGGER.warning("Failed to stream tile from cache file \"" + path + "\"", e);
+            Arrays.fill(pixels, FakeMap.pixelToIndex(Color.RED.getRGB()));
+            return pixels;
+        }
+        if (getChecksum(pixels) == checksums[tileIndex]) {
+            return pixels;
+        }
+
+        // Schedule repair of corrupted tile
+        // NOTE: retired cache files are never repaired, as the cache file path now belongs to their replacement
+        if (!retired && pendingRepairs.add(tileIndex)) {
+            LOGGER.warning("Found corrupted tile #" + tileIndex + " in cache file \"" + path + "\", regenerating it");
+            getPool().execute(() -> repairStreamedTile(tileIndex));
+        }
+        Arrays.fill(pixels, FakeMap.pixelToIndex(Color.RED.getRGB()));
+        return pixels;
+    }
+
+    /**
+     * Repair corrupted streamed tile
+     * <p>
+     * Repaired tiles are written back to disk, so they are picked up the next time they are read.
+     * Tiles that cannot be repaired keep being shown as error tiles.
+     * @param tileIndex Tile index in file
+     */
+    private void repairStreamedTile(int tileIndex) {
+        int tilesPerStep = width * height;
+        try {
+            Map<Integer, List<Integer>> corruptedTiles = Collections.singletonMap(tileIndex / tilesPerStep,
+                Collections.singletonList(tileIndex % tilesPerStep));
+            repairTiles(corruptedTiles);
+            pendingRepairs.remove(tileIndex);
+        } catch (IOException | RuntimeException e) {
+            // Tile is not repaired again until cache file gets reloaded
+            LOGGER.warning("Failed to regenerate tile from cache file \"" + path + "\"", e);
+        }
+    }
+
+    /**
+     * Read bytes from streamed cache file
+     * <p>
+     * Uses positional reads, so the same file can be read concurrently. The file is opened again if it got closed
+     * by an interrupted read.
+     * @param  buffer Buffer to fill
+     * @param  offset Offset in file
+     * @throws ClosedChannelException if this instance was released
+     * @throws IOException if failed to read file
+     */
+    private void readFully(@NotNull ByteBuffer buffer, long offset) throws IOException {
+        FileChannel channel;
+        synchronized (streamLock) {
+            if (released) {
+                throw new ClosedChannelException();
+            }
+            if (streamChannel == null || !streamChannel.isOpen()) {
+                streamChannel = FileChannel.open(Objects.requireNonNull(streamPath), StandardOpenOption.READ);
+            }
+            channel = streamChannel;
+        }
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * Close streamed cache file
+     * <p>
+     * Must be called while holding the stream lock.
+     */
+    private void closeStreamChannel() {
+        if (streamChannel == null) {
+            return;
+        }
+        try {
+            streamChannel.close();
+        } catch (IOException e) {
+            LOGGER.warning("Failed to close cache file \"" + path + "\"", e);
+        }
+        streamChannel = null;
+    }
+
+    /**
+     * Get tile checksum
+     * @param  pixels Tile pixels
+     * @return        CRC32 checksum
+     */
+    private static int getChecksum(@NotNull byte[] pixels) {
+        CRC32 crc = new CRC32();
+        crc.update(pixels);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Get tile offset in cache file
+     * <p>
+     * Tiles are sorted by animation step, then column, then row.
+     * @param  col  Tile column
+     * @param  row  Tile row
+     * @param  step Animation step
+     * @return      Offset in bytes
+     */
+    private long getTileOffset(int col, int row, int step) {
+        return getTileOffset((long) step*width*height + col*height + row);
+    }
+
+    /**
+     * Get tile offset in cache file
+     * @param  tileIndex Tile index in file
+     * @return           Offset in bytes
+     */
+    private static long getTileOffset(long tileIndex) {
+        return HEADER_SIZE + tileIndex*FakeMap.DIMENSION*FakeMap.DIMENSION;
+    }
+
+    /**
+     * Get offset of step delays in cache file
+     * <p>
+     * Delays are stored after all tiles, so steps can be appended while rendering.
+     * @param  numOfSteps Number of animation steps
+     * @return            Offset in bytes
+     */
+    private long getDelaysOffset(int numOfSteps) {
+        return getTileOffset(0, 0, numOfSteps);
+    }
+
+    /**
+     * Get expected cache file length
+     * <p>
+     * Step delays are followed by the source frame of each step (four bytes each), the checksum of each tile (four
+     * bytes each, same order as tiles) and, lastly, the checksum of the header and all metadata.
+     * @param  numOfSteps Number of animation steps
+     * @return            Length in bytes
+     */
+    private long getFileLength(int numOfSteps) {
+        return getDelaysOffset(numOfSteps) + 6L*numOfSteps + 4L*numOfSteps*width*height + 4;
+    }
+
+    /**
+     * Write file header and metadata
+     * @param  stream File stream
+     * @throws IOException if failed to write header
+     */
+    private void writeMetadata(@NotNull RandomAccessFile stream) throws IOException {
+        int numOfSteps = delays.length;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(CACHE_SIGNATURE);         // "YMP" signature
+        header.put((byte) CACHE_VERSION);    // Format version
+        header.putShort((short) numOfSteps); // Number of animation steps
+        fingerprint.write(header);           // Source file and render parameters
+
+        // Build metadata
+        int metadataSize = (int) (getFileLength(numOfSteps) - getDelaysOffset(numOfSteps));
+        ByteBuffer metadata = ByteBuffer.allocate(metadataSize).order(ByteOrder.LITTLE_ENDIAN);
+        for (int delay : delays) {
+            metadata.putShort((short) delay); // Step delay in 50ms intervals
+        }
+        for (int frame : frames) {
+            metadata.putInt(frame);           // Source frame of step
+        }
+        for (int checksum : checksums) {
+            metadata.putInt(checksum);        // Tile checksum
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array());
+        crc.update(metadata.array(), 0, metadata.position());
+        metadata.putInt((int) crc.getValue());
+
+        // Write to disk
+        stream.seek(0);
+        stream.write(header.array());
+        stream.seek(getDelaysOffset(numOfSteps));
+        stream.write(metadata.array());
+    }
+
+    /**
+     * Write tiles of an animation step
+     * @param  channel File channel
+     * @param  step    Animation step
+     * @param  tiles   Tile pixels sorted by column and row
+     * @return         Tile checksums sorted by column and row
+     * @throws UncheckedIOException if failed to write tiles
+     */
+    private @NotNull int[] writeTiles(
+        @NotNull FileChannel channel,
+        int step,
+        @NotNull byte[][] tiles
+    ) throws UncheckedIOException {
+        int[] tileChecksums = new int[tiles.length];
+        RangeAction.run(getPool(), 0, tiles.length, tileIndex -> {
+            tileChecksums[tileIndex] = getChecksum(tiles[tileIndex]);
+            long position = getTileOffset(tileIndex / height, tileIndex % height, step);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(tiles[tileIndex]);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return tileChecksums;
+    }
+
+    /**
+     * Try to write data to disk
+     * @param  renderedSteps Tile pixels of every step sorted by column and row
+     * @return               Whether data was written
+     */
+    private boolean tryToWriteToDisk(@NotNull List<byte[][]> renderedSteps) {
+        Path tempPath = null;
+        try {
+            tempPath = getTempPath();
+            try (RandomAccessFile stream = new RandomAccessFile(tempPath.toFile(), "rw")) {
+                int numOfSteps = delays.length;
+                stream.setLength(getFileLength(numOfSteps));
+
+                // Add pixels (each tile is written in parallel at its own offset)
+                FileChannel channel = stream.getChannel();
+                int[][] allChecksums = new int[numOfSteps][];
+                for (int step=0; step<numOfSteps; ++step) {
+                    allChecksums[step] = writeTiles(channel, step, renderedSteps.get(step));
+                }
+                checksums = Arrays.stream(allChecksums).flatMapToInt(Arrays::stream).toArray();
+                writeMetadata(stream);
+            }
+            commitTempFile(tempPath);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
             LOGGER.severe("Failed to write to cache file \"" + path + "\"", e);
+            if (tempPath != null) {
+                deleteTempFile(tempPath);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get temporary file path next to cache file
+     * <p>
+     * Cache files are always written to a temporary file first, and then atomically moved into place. This way,
+     * a crash while writing never leaves a partially written cache file behind.
+     * @return Path to temporary file
+     */
+    private @NotNull Path getTempPath() {
+        mkdirs();
+        String suffix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        return path.resolveSibling(path.getFileName() + "." + suffix + TEMP_EXT);
+    }
+
+    /**
+     * Move temporary file into place
+     * @param  tempPath Path to temporary file
+     * @throws IOException if failed to move file
+     */
+    private void commitTempFile(@NotNull Path tempPath) throws IOException {
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException __) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Delete temporary file
+     * @param tempPath Path to temporary file
+     */
+    private void deleteTempFile(@NotNull Path tempPath) {
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to delete temporary file \"" + tempPath + "\"", e);
+        }
+    }
+
+    /**
+     * Values that identify the source file and render parameters used to generate a cache file
+     */
+    private static class Fingerprint {
+        private final long sourceSize;
+        private final long sourceHash;
+        private final int paramsHash;
+
+        /**
+         * Create instance from image file
+         * @param  imageFile Image file instance
+         * @param  admission Render admission decision
+         * @return           Fingerprint instance
+         * @throws IOException if failed to read image file
+         */
+        private static @NotNull Fingerprint from(
+            @NotNull ImageFile imageFile,
+            @NotNull RenderAdmission admission
+        ) throws IOException {
+            long sourceHash = imageFile.getContentHash();
+            long sourceSize = imageFile.getFileSize();
+
+            // Hash parameters that change the rendered maps
+            // NOTE: the timeline already reflects the animation limits
+            CRC32 params = new CRC32();
+            params.update(RenderContext.get().getResampleFilter().name().getBytes(StandardCharsets.UTF_8));
+            AnimationTimeline timeline = admission.getTimeline();
+            ByteBuffer timelineBuffer = ByteBuffer.allocate(timeline.size() * 8);
+            for (int step=0; step<timeline.size(); ++step) {
+                timelineBuffer.putInt(timeline.getFrame(step));
+                timelineBuffer.putInt(timeline.getDuration(step));
+            }
+            params.update(timelineBuffer.array());
+
+            return new Fingerprint(sourceSize, sourceHash, (int) params.getValue());
+        }
+
+        /**
+         * Read instance from header
+         * @param  buffer Header buffer
+         * @return        Fingerprint instance
+         */
+        private static @NotNull Fingerprint read(@NotNull ByteBuffer buffer) {
+            return new Fingerprint(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+
+        /**
+         * Class constructor
+         * @param sourceSize Source file size in bytes
+         * @param sourceHash Source file content hash
+         * @param paramsHash Render parameters hash
+         */
+        private Fingerprint(long sourceSize, long sourceHash, int paramsHash) {
+            this.sourceSize = sourceSize;
+            this.sourceHash = sourceHash;
+            this.paramsHash = paramsHash;
+        }
+
+        /**
+         * Write instance to header
+         * @param buffer Header buffer
+         */
+        private void write(@NotNull ByteBuffer buffer) {
+            buffer.putLong(sourceSize);
+            buffer.putLong(sourceHash);
+            buffer.putInt(paramsHash);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint fingerprint = (Fingerprint) other;
+            return sourceSize == fingerprint.sourceSize &&
+                sourceHash == fingerprint.sourceHash &&
+                paramsHash == fingerprint.paramsHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceSize, sourceHash, paramsHash);
         }
     }
 }
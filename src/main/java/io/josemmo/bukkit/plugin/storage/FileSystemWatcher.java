@@ -1,38 +1,68 @@
 package io.josemmo.bukkit.plugin.storage;
 
 import com.sun.nio.file.ExtendedWatchEventModifier;
+import io.josemmo.bukkit.plugin.utils.CsvConfiguration;
 import io.josemmo.bukkit.plugin.utils.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
 /**
  * Service for detecting file events inside a given directory.
  * <p>
  * It supports recursive storage (<i>e.g.,</i> nested directories) and watches for file system changes in realtime
  * when supported by the OS.
+ * <p>
+ * Changes are debounced: all events of a file are coalesced into a single one, which is only emitted after its size
+ * and last modification time have been stable for a quiet period. This way, files are not processed while they are
+ * still being written. Changes that settle together (<i>e.g.,</i> a bulk upload) are emitted as a single batch.
  */
 public abstract class FileSystemWatcher {
     private static final int MAX_DEPTH = 32;
+    private static final int SCAN_THREADS = 8; // Directory listing is mostly I/O-bound
     private static final int POLLING_INTERVAL = 4000;
+    private static final int MAX_POLLING_INTERVAL = 30000;
+    private static final int DISPATCH_INTERVAL = 250; // How often to check pending changes, in milliseconds
+    private static final int MAX_BATCH_DELAY_FACTOR = 10; // Maximum wait for a batch, in quiet periods
+    private static final long MTIME_RESOLUTION = 2000; // Coarsest timestamp resolution to expect (FAT, some NAS)
+    private static final long UNKNOWN_TIME = -1; // Directory timestamp that never matches
+    private static final String CHECKSUM_ROW = "#";
+    private static final String TEMP_EXT = ".tmp";
     private static final String PROBE_FILENAME = ".inotify_test";
     private static final Logger LOGGER = Logger.getLogger("FileSystemWatcher");
     protected final Path basePath;
+    private final long quietPeriod;
+    private final @Nullable Path snapshotPath;
     /** Map of existing directories with the files they contain and their last modification timestamps */
     private final SortedMap<Path, Map<Path, Long>> fileTree = new TreeMap<>();
+    /** Last modification timestamps of directories when they were last listed, guarded by {@link #fileTree} */
+    private final Map<Path, Long> directoryTimes = new HashMap<>();
+    /** Map of files with changes not yet emitted, guarded by {@link #fileTree} */
+    private final Map<Path, PendingChange> pendingChanges = new LinkedHashMap<>();
     private @Nullable Thread watcherThread;
+    private @Nullable ForkJoinPool scanPool;
 
     /**
      * Class constructor
-     * @param basePath Base path
+     * @param basePath     Base path
+     * @param quietPeriod  Time in milliseconds a changed file must remain unchanged before emitting its event
+     * @param snapshotPath Path to file tree snapshot or NULL to always perform a full scan on start
      */
-    public FileSystemWatcher(@NotNull Path basePath) {
+    public FileSystemWatcher(@NotNull Path basePath, long quietPeriod, @Nullable Path snapshotPath) {
         this.basePath = basePath;
+        this.quietPeriod = quietPeriod;
+        this.snapshotPath = snapshotPath;
     }
 
     /**
@@ -45,8 +75,15 @@ public abstract class FileSystemWatcher {
             throw new RuntimeException("File system watcher is already running");
         }
 
-        // Perform initial scan
-        scan();
+        // Perform initial scan, reconciling the snapshot from last run
+        // NOTE: existing files are emitted right away, without waiting for them to settle
+        scanPool = new ForkJoinPool(SCAN_THREADS);
+        long startTime = System.currentTimeMillis();
+        TreeSnapshot snapshot = loadSnapshot();
+        reconcile(walk(snapshot, false));
+        processPendingChanges(true);
+        LOGGER.fine("Scanned " + snapshot.directories.size() + " known directories in " +
+            (System.currentTimeMillis() - startTime) + "ms");
 
         // Start watching files
         watcherThread = new WatcherThread();
@@ -61,6 +98,11 @@ public abstract class FileSystemWatcher {
             watcherThread.interrupt();
             watcherThread = null;
         }
+        if (scanPool != null) {
+            scanPool.shutdownNow();
+            scanPool = null;
+        }
+        saveSnapshot();
     }
 
     /**
@@ -82,57 +124,308 @@ public abstract class FileSystemWatcher {
     protected abstract void onFileDeleted(@NotNull Path path);
 
     /**
-     * Scan base directory recursively
+     * On batch of file events
+     * <p>
+     * Emits every event in order by default.
+     * @param events Map of events indexed by file path
+     */
+    protected void onFileEvents(@NotNull Map<Path, FileEvent> events) {
+        for (Map.Entry<Path, FileEvent> entry : events.entrySet()) {
+            switch (entry.getValue()) {
+                case CREATED:
+                    onFileCreated(entry.getKey());
+                    break;
+                case MODIFIED:
+                    onFileModified(entry.getKey());
+                    break;
+                case DELETED:
+                    onFileDeleted(entry.getKey());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Queue file change
+     * <p>
+     * Must be called while holding the {@link #fileTree} lock.
+     * @param path          File path
+     * @param existedBefore Whether file is currently known by listeners (<i>i.e.</i>, before this change)
+     */
+    private void queueChange(@NotNull Path path, boolean existedBefore) {
+        PendingChange change = pendingChanges.get(path);
+        if (change == null) {
+            pendingChanges.put(path, new PendingChange(existedBefore));
+        } else {
+            change.touch();
+        }
+    }
+
+    /**
+     * Emit settled pending changes
+     * <p>
+     * Settled changes are held back while other pending changes are still settling, so they can be emitted together
+     * in a single batch, up to a maximum delay.
+     * @param force Whether to emit all pending changes, even if not settled
      */
-    private void scan() {
+    private void processPendingChanges(boolean force) {
+        // Read attributes of pending files without holding the lock, as it might be slow (e.g., network storage)
+        Map<Path, FileAttributes> attributesByPath = new HashMap<>();
+        if (!force) {
+            List<Path> pendingPaths;
+            synchronized (fileTree) {
+                pendingPaths = new ArrayList<>(pendingChanges.keySet());
+            }
+            for (Path path : pendingPaths) {
+                attributesByPath.put(path, FileAttributes.read(path));
+            }
+        }
+
+        Map<Path, FileEvent> events = new LinkedHashMap<>();
         synchronized (fileTree) {
-            // Assume all directories and files have been deleted, will discard existing items afterward
-            Set<Path> deletedDirectories = new HashSet<>(fileTree.keySet());
-            Set<Path> deletedFiles = fileTree.values().stream()
-                .map(Map::keySet)
-                .flatMap(Set::stream)
-                .collect(Collectors.toSet());
-
-            // Traverse file tree
-            Set<FileVisitOption> options = EnumSet.noneOf(FileVisitOption.class);
-            try {
-                Files.walkFileTree(basePath, options, MAX_DEPTH, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
-                        fileTree.putIfAbsent(path, new HashMap<>());
-                        deletedDirectories.remove(path);
-                        return FileVisitResult.CONTINUE;
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+
+            // Find settled changes
+            // NOTE: changes queued after reading attributes are checked next time
+            long now = System.currentTimeMillis();
+            boolean allSettled = true;
+            long oldestChange = now;
+            for (Map.Entry<Path, PendingChange> entry : pendingChanges.entrySet()) {
+                PendingChange change = entry.getValue();
+                FileAttributes attributes = attributesByPath.get(entry.getKey());
+                change.settled = force || (attributes != null && change.checkSettled(attributes, now));
+                allSettled &= change.settled;
+                oldestChange = Math.min(oldestChange, change.firstChangeAt);
+            }
+            if (!allSettled && now-oldestChange < quietPeriod*MAX_BATCH_DELAY_FACTOR) {
+                return;
+            }
+
+            // Coalesce settled changes into a single event per file
+            Iterator<Map.Entry<Path, PendingChange>> iter = pendingChanges.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<Path, PendingChange> entry = iter.next();
+                if (!entry.getValue().settled) {
+                    continue;
+                }
+                iter.remove();
+                Path path = entry.getKey();
+                Map<Path, Long> subtree = fileTree.get(path.getParent());
+                boolean existsNow = (subtree != null && subtree.containsKey(path));
+                boolean existedBefore = entry.getValue().existedBefore;
+                if (existsNow) {
+                    events.put(path, existedBefore ? FileEvent.MODIFIED : FileEvent.CREATED);
+                } else if (existedBefore) {
+                    events.put(path, FileEvent.DELETED);
+                }
+            }
+        }
+
+        // Emit events outside lock
+        if (!events.isEmpty()) {
+            LOGGER.fine("Emitting batch of " + events.size() + " file event(s)");
+            onFileEvents(events);
+        }
+    }
+
+    /**
+     * Walk base directory in parallel
+     * <p>
+     * Directories whose last modification time did not change since the previous walk are not listed again, as
+     * adding, removing or renaming entries always updates it. Instead, their previously known files and
+     * subdirectories are reused.
+     * As files modified in place do not update the modification time of their directory, the previously known files
+     * of unchanged directories can optionally be checked for changes, which is still cheaper than listing them.
+     * @param  previous   Previous state of file tree
+     * @param  checkFiles Whether to check known files of unchanged directories for changes
+     * @return            New state of file tree
+     */
+    private @NotNull TreeSnapshot walk(@NotNull TreeSnapshot previous, boolean checkFiles) {
+        // Index previously known subdirectories
+        Map<Path, List<Path>> previousSubdirectories = new HashMap<>();
+        for (Path directory : previous.directories.keySet()) {
+            if (!directory.equals(basePath)) {
+                previousSubdirectories.computeIfAbsent(directory.getParent(), __ -> new ArrayList<>()).add(directory);
+            }
+        }
+
+        // Walk directories
+        TreeSnapshot result = new TreeSnapshot(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        Objects.requireNonNull(scanPool).invoke(new DirectoryWalk(basePath, 0, previous, previousSubdirectories,
+            checkFiles, result));
+        return result;
+    }
+
+    /**
+     * Reconcile file tree with a new state
+     * <p>
+     * Queues changes for all files that were created, modified or deleted.
+     * @param  newState New state of file tree
+     * @return          Number of changed files
+     */
+    private int reconcile(@NotNull TreeSnapshot newState) {
+        int numOfChanges = 0;
+        synchronized (fileTree) {
+            // Find deleted files
+            for (Map.Entry<Path, Map<Path, Long>> entry : fileTree.entrySet()) {
+                Map<Path, Long> newFiles = newState.files.get(entry.getKey());
+                for (Path path : entry.getValue().keySet()) {
+                    if (newFiles == null || !newFiles.containsKey(path)) {
+                        queueChange(path, true);
+                        ++numOfChanges;
                     }
+                }
+            }
 
-                    @Override
-                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
-                        Map<Path, Long> subtree = fileTree.get(path.getParent());
-                        Long oldModifiedAt = subtree.get(path);
-                        long newModifiedAt = attrs.lastModifiedTime().toMillis();
-                        if (oldModifiedAt == null) {
-                            subtree.put(path, newModifiedAt);
-                            onFileCreated(path);
-                        } else if (newModifiedAt > oldModifiedAt) {
-                            subtree.put(path, newModifiedAt);
-                            onFileModified(path);
-                        }
-                        deletedFiles.remove(path);
-                        return FileVisitResult.CONTINUE;
+            // Find created and modified files
+            for (Map.Entry<Path, Map<Path, Long>> entry : newState.files.entrySet()) {
+                Map<Path, Long> oldFiles = fileTree.get(entry.getKey());
+                for (Map.Entry<Path, Long> fileEntry : entry.getValue().entrySet()) {
+                    Long oldModifiedAt = (oldFiles == null) ? null : oldFiles.get(fileEntry.getKey());
+                    if (oldModifiedAt == null || fileEntry.getValue() > oldModifiedAt) {
+                        queueChange(fileEntry.getKey(), oldModifiedAt != null);
+                        ++numOfChanges;
                     }
-                });
-            } catch (IOException e) {
-                LOGGER.severe("Failed to list files in directory", e);
+                }
             }
 
-            // Process deleted files and directories
-            for (Path path : deletedFiles) {
-                fileTree.get(path.getParent()).remove(path);
-                onFileDeleted(path);
+            // Swap state
+            fileTree.clear();
+            fileTree.putAll(newState.files);
+            directoryTimes.clear();
+            directoryTimes.putAll(newState.directories);
+        }
+        return numOfChanges;
+    }
+
+    /**
+     * Load file tree snapshot from disk
+     * <p>
+     * Snapshots end with a row holding the number of entries and their checksum. Incomplete or damaged snapshots
+     * are discarded, as trusting them would hide files from directories that are not listed again.
+     * @return File tree snapshot (empty if not available)
+     */
+    private @NotNull TreeSnapshot loadSnapshot() {
+        TreeSnapshot snapshot = new TreeSnapshot(new HashMap<>(), new HashMap<>());
+        if (snapshotPath == null || !Files.isRegularFile(snapshotPath)) {
+            return snapshot;
+        }
+        CsvConfiguration config = new CsvConfiguration();
+        try {
+            config.load(snapshotPath);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to load file tree snapshot", e);
+            return snapshot;
+        }
+
+        // Validate snapshot
+        List<String[]> rows = config.getRows();
+        String[] checksumRow = rows.isEmpty() ? null : rows.remove(rows.size()-1);
+        if (checksumRow == null || !Arrays.equals(checksumRow, getChecksumRow(rows))) {
+            LOGGER.warning("File tree snapshot is incomplete or damaged, performing a full scan");
+            return snapshot;
+        }
+
+        // Parse entries
+        for (String[] row : rows) {
+            try {
+                Path path = row[1].isEmpty() ? basePath : basePath.resolve(row[1]);
+                long modifiedAt = Long.parseLong(row[2]);
+                if (row[0].equals("d")) {
+                    snapshot.directories.put(path, modifiedAt);
+                    snapshot.files.putIfAbsent(path, new HashMap<>());
+                } else {
+                    snapshot.files.computeIfAbsent(path.getParent(), __ -> new HashMap<>()).put(path, modifiedAt);
+                }
+            } catch (Exception __) {
+                LOGGER.warning("Invalid file tree snapshot entry: " + String.join(";", row));
             }
-            for (Path path : deletedDirectories) {
-                fileTree.remove(path);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Save file tree snapshot to disk
+     * <p>
+     * The snapshot is written to a temporary file first and then moved over the previous one, so a crash or a full
+     * disk never leaves a partially written snapshot behind.
+     */
+    private void saveSnapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+        CsvConfiguration config = new CsvConfiguration();
+        synchronized (fileTree) {
+            for (Map.Entry<Path, Long> entry : directoryTimes.entrySet()) {
+                config.addRow(new String[] {"d", toRelativePath(entry.getKey()), String.valueOf(entry.getValue())});
+            }
+            for (Map<Path, Long> subtree : fileTree.values()) {
+                for (Map.Entry<Path, Long> entry : subtree.entrySet()) {
+                    config.addRow(new String[] {"f", toRelativePath(entry.getKey()), String.valueOf(entry.getValue())});
+                }
             }
         }
+        config.addRow(getChecksumRow(config.getRows()));
+
+        // Write to disk
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + TEMP_EXT);
+        try {
+            config.save(tempPath);
+            try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                tempChannel.force(true);
+            }
+            try {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException __) {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save file tree snapshot", e);
+        }
+    }
+
+    /**
+     * Get checksum row
+     * @param  rows Snapshot entries
+     * @return      Row with the number of entries and their CRC32 checksum
+     */
+    private static @NotNull String[] getChecksumRow(@NotNull List<String[]> rows) {
+        CRC32 crc = new CRC32();
+        for (String[] row : rows) {
+            crc.update((String.join(CsvConfiguration.COLUMN_DELIMITER, row) + "\n").getBytes(CsvConfiguration.CHARSET));
+        }
+        return new String[] {CHECKSUM_ROW, String.valueOf(rows.size()), Long.toHexString(crc.getValue())};
+    }
+
+    /**
+     * Get relative path
+     * @param  path Path inside base directory
+     * @return      Path relative to base directory
+     */
+    private @NotNull String toRelativePath(@NotNull Path path) {
+        return basePath.relativize(path).toString().replaceAll("\\\\", "/");
+    }
+
+    /**
+     * Scan base directory for changes
+     * <p>
+     * The new state of the file tree is built without holding any lock and then swapped in, so readers are only
+     * blocked while comparing both states.
+     * @return Number of changed files
+     */
+    private int scan() {
+        // Take a snapshot of current state
+        // NOTE: file maps are shared as they are only replaced (not mutated) while polling
+        TreeSnapshot previous;
+        synchronized (fileTree) {
+            previous = new TreeSnapshot(new HashMap<>(fileTree), new HashMap<>(directoryTimes));
+        }
+
+        // Walk base directory and swap state
+        return reconcile(walk(previous, true));
     }
 
     private class WatcherThread extends Thread {
@@ -181,12 +474,25 @@ public abstract class FileSystemWatcher {
          */
         @SuppressWarnings({"InfiniteLoopStatement", "BusyWait"})
         private void runWithPolling() {
+            long interval = POLLING_INTERVAL;
             try {
                 while (true) {
-                    Thread.sleep(POLLING_INTERVAL);
-                    scan();
+                    Thread.sleep(interval);
+                    int numOfChanges = scan();
+                    processPendingChanges(false);
+
+                    // Back off while nothing changes, but keep polling fast while there are changes to settle
+                    boolean hasPendingChanges;
+                    synchronized (fileTree) {
+                        hasPendingChanges = !pendingChanges.isEmpty();
+                    }
+                    if (numOfChanges > 0 || hasPendingChanges) {
+                        interval = POLLING_INTERVAL;
+                    } else {
+                        interval = Math.min(interval*2, MAX_POLLING_INTERVAL);
+                    }
                 }
-            } catch (InterruptedException __) {
+            } catch (InterruptedException | RejectedExecutionException __) {
                 // Silently ignore exception, this is expected when service shuts down
             }
         }
@@ -204,16 +510,24 @@ public abstract class FileSystemWatcher {
                 }
 
                 // Listen for events
-                WatchKey key;
                 try {
-                    while ((key = watchService.take()) != null) {
-                        for (WatchEvent<?> event : key.pollEvents()) {
-                            WatchEvent.Kind<?> kind = event.kind();
-                            Path keyPath = (Path) key.watchable();
-                            Path path = keyPath.resolve((Path) event.context());
-                            handleWatchEvent(watchService, path, kind);
+                    long lastProcessedAt = 0;
+                    while (!isInterrupted()) {
+                        WatchKey key = watchService.poll(DISPATCH_INTERVAL, TimeUnit.MILLISECONDS);
+                        if (key != null) {
+                            for (WatchEvent<?> event : key.pollEvents()) {
+                                WatchEvent.Kind<?> kind = event.kind();
+                                Path keyPath = (Path) key.watchable();
+                                Path path = keyPath.resolve((Path) event.context());
+                                handleWatchEvent(watchService, path, kind);
+                            }
+                            key.reset();
+                        }
+                        long now = System.currentTimeMillis();
+                        if (now-lastProcessedAt >= DISPATCH_INTERVAL) {
+                            processPendingChanges(false);
+                            lastProcessedAt = now;
                         }
-                        key.reset();
                     }
                 } catch (ClosedWatchServiceException | InterruptedException __) {
                     // Silently ignore exception, this is expected when service shuts down
@@ -237,7 +551,7 @@ public abstract class FileSystemWatcher {
                 if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
                     if (subtree.containsKey(path)) {
                         subtree.remove(path);
-                        onFileDeleted(path);
+                        queueChange(path, true);
                     } else {
                         unregisterDirectory(path);
                     }
@@ -254,14 +568,14 @@ public abstract class FileSystemWatcher {
 
                 // Handle creation and modification of files
                 // NOTE: in Windows, some file creation events are reported as modifications
+                // NOTE: events are queued until the file settles, as it might still be being written
                 Long oldModifiedAt = subtree.get(path);
                 long newModifiedAt = path.toFile().lastModified();
-                if (oldModifiedAt == null) {
+                if (oldModifiedAt == null || newModifiedAt > oldModifiedAt) {
                     subtree.put(path, newModifiedAt);
-                    onFileCreated(path);
-                } else if (newModifiedAt > oldModifiedAt) {
-                    subtree.put(path, newModifiedAt);
-                    onFileModified(path);
+                    queueChange(path, oldModifiedAt != null);
+                } else if (pendingChanges.containsKey(path)) {
+                    pendingChanges.get(path).touch();
                 }
             }
         }
@@ -311,9 +625,10 @@ public abstract class FileSystemWatcher {
                     Map.Entry<Path, Map<Path, Long>> entry = iter.next();
                     if (entry.getKey().startsWith(path)) {
                         for (Path childPath : entry.getValue().keySet()) {
-                            onFileDeleted(childPath);
+                            queueChange(childPath, true);
                         }
                         foundFirst = true;
+                        directoryTimes.remove(entry.getKey());
                         iter.remove();
                     } else if (foundFirst) {
                         // We can break early because set is alphabetically sorted by key
@@ -323,4 +638,223 @@ public abstract class FileSystemWatcher {
             }
         }
     }
+
+    /**
+     * Coalesced file event
+     */
+    protected enum FileEvent {
+        CREATED,
+        MODIFIED,
+        DELETED
+    }
+
+    /**
+     * File change that has not been emitted yet
+     */
+    private class PendingChange {
+        private final boolean existedBefore;
+        private final long firstChangeAt;
+        private long lastChangeAt;
+        private long size = -1;
+        private long lastModified = -1;
+        private boolean settled = false;
+
+        /**
+         * Class constructor
+         * @param existedBefore Whether file was known by listeners before this change
+         */
+        private PendingChange(boolean existedBefore) {
+            this.existedBefore = existedBefore;
+            this.firstChangeAt = System.currentTimeMillis();
+            this.lastChangeAt = firstChangeAt;
+        }
+
+        /**
+         * Mark file as changed again
+         */
+        private void touch() {
+            lastChangeAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Check whether change has settled
+         * <p>
+         * A change settles once the file size and last modification time have not changed for the quiet period.
+         * @param  attributes Current file attributes
+         * @param  now        Current time in milliseconds
+         * @return            Whether change has settled
+         */
+        private boolean checkSettled(@NotNull FileAttributes attributes, long now) {
+            if (attributes.size != size || attributes.lastModified != lastModified) {
+                size = attributes.size;
+                lastModified = attributes.lastModified;
+                lastChangeAt = now;
+                return false;
+            }
+            return (now-lastChangeAt >= quietPeriod);
+        }
+    }
+
+    /**
+     * Size and last modification time of a file
+     */
+    private static class FileAttributes {
+        private final long size;
+        private final long lastModified;
+
+        /**
+         * Read file attributes
+         * @param  path File path
+         * @return      File attributes (<code>-1</code> if file does not exist)
+         */
+        private static @NotNull FileAttributes read(@NotNull Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileAttributes(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException __) {
+                // File no longer exists
+                return new FileAttributes(-1, -1);
+            }
+        }
+
+        /**
+         * Class constructor
+         * @param size         Size in bytes
+         * @param lastModified Last modification time in milliseconds
+         */
+        private FileAttributes(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * State of file tree
+     */
+    private static class TreeSnapshot {
+        /** Map of directories with the files they contain and their last modification timestamps */
+        private final Map<Path, Map<Path, Long>> files;
+        /** Map of directories with their last modification timestamps */
+        private final Map<Path, Long> directories;
+
+        /**
+         * Class constructor
+         * @param files       Files by directory
+         * @param directories Directory timestamps
+         */
+        private TreeSnapshot(@NotNull Map<Path, Map<Path, Long>> files, @NotNull Map<Path, Long> directories) {
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+
+    /**
+     * Task for walking a directory and its subdirectories
+     */
+    private static class DirectoryWalk extends RecursiveAction {
+        private final Path path;
+        private final int depth;
+        private final TreeSnapshot previous;
+        private final Map<Path, List<Path>> previousSubdirectories;
+        private final boolean checkFiles;
+        private final TreeSnapshot result;
+
+        /**
+         * Class constructor
+         * @param path                   Directory path
+         * @param depth                  Depth relative to base directory
+         * @param previous               Previous state of file tree
+         * @param previousSubdirectories Previously known subdirectories by directory
+         * @param checkFiles             Whether to check known files of unchanged directories for changes
+         * @param result                 New state of file tree to populate
+         */
+        private DirectoryWalk(
+            @NotNull Path path,
+            int depth,
+            @NotNull TreeSnapshot previous,
+            @NotNull Map<Path, List<Path>> previousSubdirectories,
+            boolean checkFiles,
+            @NotNull TreeSnapshot result
+        ) {
+            this.path = path;
+            this.depth = depth;
+            this.previous = previous;
+            this.previousSubdirectories = previousSubdirectories;
+            this.checkFiles = checkFiles;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            // Get directory timestamp (before listing, so changes while listing are detected next time)
+            long modifiedAt;
+            try {
+                modifiedAt = Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).toMillis();
+            } catch (IOException __) {
+                // Directory no longer exists
+                return;
+            }
+
+            // Do not trust timestamps that are too recent, as the directory might change again within the same tick
+            // of a coarse timestamp without updating it (e.g., in network file systems)
+            if (System.currentTimeMillis()-modifiedAt < MTIME_RESOLUTION) {
+                modifiedAt = UNKNOWN_TIME;
+            }
+
+            // Reuse previous entries if directory did not change
+            Map<Path, Long> files = new HashMap<>();
+            List<Path> subdirectories = new ArrayList<>();
+            Long previousModifiedAt = previous.directories.get(path);
+            Map<Path, Long> previousFiles = previous.files.get(path);
+            boolean isUnchanged = (modifiedAt != UNKNOWN_TIME && previousModifiedAt != null &&
+                previousModifiedAt == modifiedAt);
+            if (isUnchanged && previousFiles != null) {
+                if (checkFiles) {
+                    for (Path file : previousFiles.keySet()) {
+                        try {
+                            files.put(file, Files.getLastModifiedTime(file, LinkOption.NOFOLLOW_LINKS).toMillis());
+                        } catch (IOException __) {
+                            // File was deleted after reading directory timestamp
+                        }
+                    }
+                } else {
+                    files.putAll(previousFiles);
+                }
+                subdirectories.addAll(previousSubdirectories.getOrDefault(path, Collections.emptyList()));
+            } else {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path child : stream) {
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(child, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException __) {
+                            // Entry was deleted while listing
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            subdirectories.add(child);
+                        } else {
+                            files.put(child, attributes.lastModifiedTime().toMillis());
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.severe("Failed to list files in directory \"" + path + "\"", e);
+                    return;
+                }
+            }
+            result.files.put(path, files);
+            result.directories.put(path, modifiedAt);
+
+            // Walk subdirectories in parallel
+            if (depth < MAX_DEPTH) {
+                List<DirectoryWalk> tasks = new ArrayList<>();
+                for (Path subdirectory : subdirectories) {
+                    tasks.add(new DirectoryWalk(subdirectory, depth+1, previous, previousSubdirectories,
+                        checkFiles, result));
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable sorted index of image filenames.
+ * <p>
+ * Filenames are kept in a sorted array, so prefix lookups and pages are resolved with a binary search and only
+ * touch the filenames they return.
+ */
+public class FilenameIndex {
+    private final String[] filenames;
+
+    /**
+     * Class constructor
+     * @param filenames Filenames in ascending order
+     */
+    FilenameIndex(@NotNull String[] filenames) {
+        this.filenames = filenames;
+    }
+
+    /**
+     * Get number of filenames
+     * @return Number of filenames
+     */
+    public int size() {
+        return filenames.length;
+    }
+
+    /**
+     * Is empty
+     * @return Whether index has no filenames
+     */
+    public boolean isEmpty() {
+        return (filenames.length == 0);
+    }
+
+    /**
+     * Get filename
+     * @param  index Position in index
+     * @return       Filename
+     */
+    public @NotNull String get(int index) {
+        return filenames[index];
+    }
+
+    /**
+     * Get page of filenames
+     * @param  offset Position of first filename
+     * @param  limit  Maximum number of filenames to return
+     * @return        Filenames in page, empty if out of range
+     */
+    public @NotNull List<String> getPage(int offset, int limit) {
+        if (offset < 0 || offset >= filenames.length || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int end = (int) Math.min((long) offset + limit, filenames.length);
+        return Collections.unmodifiableList(Arrays.asList(filenames).subList(offset, end));
+    }
+
+    /**
+     * Find filenames by prefix
+     * @param  prefix Filename prefix
+     * @param  limit  Maximum number of filenames to return
+     * @return        First filenames starting with the given prefix
+     */
+    public @NotNull List<String> findByPrefix(@NotNull String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        for (int i=getFirstIndex(prefix); i<filenames.length && result.size()<limit; ++i) {
+            if (!filenames[i].startsWith(prefix)) {
+                break;
+            }
+            result.add(filenames[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get index of first filename greater or equal than prefix
+     * @param  prefix Filename prefix
+     * @return        Index of first candidate filename
+     */
+    private int getFirstIndex(@NotNull String prefix) {
+        int index = Arrays.binarySearch(filenames, prefix);
+        return (index < 0) ? -index-1 : index;
+    }
+}
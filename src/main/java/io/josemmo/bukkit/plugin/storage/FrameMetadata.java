@@ -0,0 +1,114 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.renderer.FrameCompositor;
+import org.jetbrains.annotations.NotNull;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.io.IOException;
+
+/**
+ * Position, timing and disposal of a single image inside an animated file.
+ */
+public class FrameMetadata {
+    public static final int DEFAULT_DELAY = 10; // Delay for frames without one, in 10ms intervals (100ms)
+    private final int left;
+    private final int top;
+    private final int delay;
+    private final FrameCompositor.Disposal disposal;
+
+    /**
+     * Read frame metadata
+     * @param  reader Image reader
+     * @param  format Lowercase image format name
+     * @param  index  Image index
+     * @return        Frame metadata instance
+     * @throws IOException if failed to read metadata
+     * @throws IndexOutOfBoundsException if GIF image index does not exist
+     */
+    public static @NotNull FrameMetadata read(
+        @NotNull ImageReader reader,
+        @NotNull String format,
+        int index
+    ) throws IOException, IndexOutOfBoundsException {
+        int left = 0;
+        int top = 0;
+        int delay = DEFAULT_DELAY;
+        FrameCompositor.Disposal disposal = FrameCompositor.Disposal.NONE;
+
+        // Only GIF files are animated
+        if (!format.equals("gif")) {
+            return new FrameMetadata(left, top, delay, disposal);
+        }
+
+        // Parse GIF metadata
+        IIOMetadata metadata = reader.getImageMetadata(index);
+        String formatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode metadataRoot = (IIOMetadataNode) metadata.getAsTree(formatName);
+        for (int i=0; i<metadataRoot.getLength(); ++i) {
+            String nodeName = metadataRoot.item(i).getNodeName();
+            if (nodeName.equalsIgnoreCase("ImageDescriptor")) {
+                IIOMetadataNode descriptorNode = (IIOMetadataNode) metadataRoot.item(i);
+                left = Integer.parseInt(descriptorNode.getAttribute("imageLeftPosition"));
+                top = Integer.parseInt(descriptorNode.getAttribute("imageTopPosition"));
+            } else if (nodeName.equalsIgnoreCase("GraphicControlExtension")) {
+                IIOMetadataNode controlExtensionNode = (IIOMetadataNode) metadataRoot.item(i);
+                delay = Integer.parseInt(controlExtensionNode.getAttribute("delayTime"));
+                disposal = FrameCompositor.Disposal.fromGifName(controlExtensionNode.getAttribute("disposalMethod"));
+            }
+        }
+
+        // Same as web browsers, treat 0-10ms delays as "unspecified"
+        if (delay <= 1) {
+            delay = DEFAULT_DELAY;
+        }
+
+        return new FrameMetadata(left, top, delay, disposal);
+    }
+
+    /**
+     * Class constructor
+     * @param left     Left position inside canvas
+     * @param top      Top position inside canvas
+     * @param delay    Delay in 10ms intervals
+     * @param disposal Disposal method
+     */
+    private FrameMetadata(int left, int top, int delay, @NotNull FrameCompositor.Disposal disposal) {
+        this.left = left;
+        this.top = top;
+        this.delay = delay;
+        this.disposal = disposal;
+    }
+
+    /**
+     * Get left position
+     * @return Left position inside canvas
+     */
+    public int getLeft() {
+        return left;
+    }
+
+    /**
+     * Get top position
+     * @return Top position inside canvas
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Get delay
+     * @return Delay in 10ms intervals
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Get disposal method
+     * @return Disposal method
+     */
+    public @NotNull FrameCompositor.Disposal getDisposal() {
+        return disposal;
+    }
+}
@@ -1,14 +1,12 @@
 package io.josemmo.bukkit.plugin.storage;
 
+import io.josemmo.bukkit.plugin.YamipaPlugin;
 import io.josemmo.bukkit.plugin.renderer.FakeImage;
 import io.josemmo.bukkit.plugin.renderer.FakeItemFrame;
 import io.josemmo.bukkit.plugin.utils.Logger;
 import org.jetbrains.annotations.Blocking;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -26,16 +24,19 @@ public class ImageFile extends SynchronizedFile {
     private final Map<String, CachedMapsFile> cache = new HashMap<>();
     private final Map<String, Set<FakeImage>> subscribers = new HashMap<>();
     private final String filename;
-    private @Nullable Dimension size;
+    private final @Nullable ImageMetadataIndex metadataIndex;
+    private @Nullable ImageMetadata metadata;
 
     /**
      * Class constructor
-     * @param filename Image filename
-     * @param path     Path to image file
+     * @param filename      Image filename
+     * @param path          Path to image file
+     * @param metadataIndex Metadata index or NULL to not persist metadata
      */
-    protected ImageFile(@NotNull String filename, @NotNull Path path) {
+    protected ImageFile(@NotNull String filename, @NotNull Path path, @Nullable ImageMetadataIndex metadataIndex) {
         super(path);
         this.filename = filename;
+        this.metadataIndex = metadataIndex;
     }
 
     /**
@@ -46,22 +47,106 @@ public class ImageFile extends SynchronizedFile {
         return filename;
     }
 
+    /**
+     * Get metadata
+     * <p>
+     * Reading metadata requires opening the file and parsing its header, so the result is kept in memory and in the
+     * metadata index until the file size or last modified time change.
+     * @return Image metadata or NULL if failed to read file
+     */
+    @Blocking
+    public synchronized @Nullable ImageMetadata getMetadata() {
+        long fileSize = getFileSize();
+        long lastModified = getLastModified();
+        if (metadata != null && metadata.isUpToDate(fileSize, lastModified)) {
+            return metadata;
+        }
+
+        // Look for metadata in index
+        if (metadataIndex != null) {
+            metadata = metadataIndex.get(this);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+
+        // Read metadata from file
+        try {
+            metadata = ImageMetadata.read(this);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to read image file \"" + filename + "\"", e);
+            return null;
+        }
+        if (metadataIndex != null) {
+            metadataIndex.put(filename, metadata);
+        }
+        LOGGER.fine("Read metadata of ImageFile#(" + filename + "): " + metadata);
+        return metadata;
+    }
+
     /**
      * Get original size in pixels
      * @return Dimension instance or NULL if not a valid image file
      */
-    public synchronized @Nullable Dimension getSize() {
-        if (size != null) {
-            return size;
-        }
-        try (ImageInputStream inputStream = ImageIO.createImageInputStream(read())) {
-            ImageReader reader = ImageIO.getImageReaders(inputStream).next();
-            reader.setInput(inputStream);
-            size = new Dimension(reader.getWidth(0), reader.getHeight(0));
-            reader.dispose();
-            return size;
-        } catch (IOException | RuntimeException e) {
-            return null;
+    public @Nullable Dimension getSize() {
+        ImageMetadata metadata = getMetadata();
+        return (metadata == null) ? null : metadata.getSize();
+    }
+
+    /**
+     * Get format
+     * @return Lowercase format name or NULL if not a valid image file
+     */
+    public @Nullable String getFormat() {
+        ImageMetadata metadata = getMetadata();
+        return (metadata == null) ? null : metadata.getFormat();
+    }
+
+    /**
+     * Get frame delays
+     * @return Delay of every image in file in 10ms intervals (empty if not a valid image)
+     */
+    public @NotNull int[] getFrameDelays() {
+        ImageMetadata metadata = getMetadata();
+        return (metadata == null) ? new int[0] : metadata.getFrameDelays();
+    }
+
+    /**
+     * Get content hash
+     * <p>
+     * Hashing requires reading the entire file, so it is computed on first use (usually by the metadata index in
+     * the background) without locking this instance, and then kept in its metadata.
+     * @return CRC32 (high bits) and Adler-32 (low bits) checksums of file contents
+     * @throws IOException if failed to read file
+     */
+    @Blocking
+    public long getContentHash() throws IOException {
+        ImageMetadata currentMetadata = getMetadata();
+        if (currentMetadata == null) {
+            throw new IOException("Failed to read image file \"" + filename + "\"");
+        }
+        Long contentHash = currentMetadata.getContentHash();
+        if (contentHash != null) {
+            return contentHash;
+        }
+        long newContentHash = ImageMetadata.hashContents(this);
+        setContentHash(currentMetadata, newContentHash);
+        return newContentHash;
+    }
+
+    /**
+     * Set content hash
+     * @param hashedMetadata Metadata that was up-to-date when the file got hashed
+     * @param contentHash    Hash of file contents
+     */
+    private synchronized void setContentHash(@NotNull ImageMetadata hashedMetadata, long contentHash) {
+        if (!hashedMetadata.isUpToDate(getFileSize(), getLastModified())) {
+            // File changed while hashing
+            return;
+        }
+        metadata = hashedMetadata.withContentHash(contentHash);
+        if (metadataIndex != null) {
+            metadataIndex.put(filename, metadata);
         }
     }
 
@@ -83,6 +168,7 @@ public class ImageFile extends SynchronizedFile {
         // Get cached maps without locking this instance
         CachedMapsFile maps = cache.get(cacheKey);
         if (maps == null) {
+            recordAccess(CachedMapsFile.getPath(this, width, height));
             maps = CachedMapsFile.from(this, width, height);
         }
 
@@ -98,6 +184,35 @@ public class ImageFile extends SynchronizedFile {
         }
     }
 
+    /**
+     * Warm-up disk cache
+     * <p>
+     * Renders and writes to disk the cached maps for the given dimensions if missing or stale,
+     * without keeping them in memory.
+     * @param  width  Width in blocks
+     * @param  height Height in blocks
+     * @return        Whether cached maps had to be rendered
+     */
+    @Blocking
+    public boolean warmUp(int width, int height) {
+        String cacheKey = width + "-" + height;
+
+        // Prevent rendering the same image/dimensions pair multiple times
+        Lock lock = locks.computeIfAbsent(cacheKey, __ -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (cache.containsKey(cacheKey) || CachedMapsFile.isWarm(this, width, height)) {
+                return false;
+            }
+            recordAccess(CachedMapsFile.getPath(this, width, height));
+            CachedMapsFile.renderToDisk(this, width, height);
+            return true;
+        } finally {
+            lock.unlock();
+            locks.remove(cacheKey);
+        }
+    }
+
     /**
      * Unsubscribe from memory cache
      * <p>
@@ -120,20 +235,173 @@ public class ImageFile extends SynchronizedFile {
         // Can we clear cached maps?
         if (currentSubscribers.isEmpty()) {
             subscribers.remove(cacheKey);
-            cache.remove(cacheKey);
+            CachedMapsFile maps = cache.remove(cacheKey);
+            if (maps != null) {
+                recordAccess(maps.path);
+                maps.release();
+            }
             LOGGER.fine("Invalidated cached maps \"" + cacheKey + "\" in ImageFile#(" + filename + ")");
         }
     }
 
+    /**
+     * Get paths to cache files in use
+     * @return Paths to cache files with at least one subscriber
+     */
+    synchronized @NotNull Set<Path> getCachePathsInUse() {
+        Set<Path> paths = new HashSet<>();
+        for (CachedMapsFile maps : cache.values()) {
+            paths.add(maps.path);
+        }
+        return paths;
+    }
+
+    /**
+     * Record access to cache file
+     * @param path Path to cache file
+     */
+    private void recordAccess(@NotNull Path path) {
+        YamipaPlugin.getInstance().getCacheEvictor().recordAccess(path);
+    }
+
     /**
      * Invalidate cache
      * <p>
      * Removes all references to cached map instances.
      * This way, next time an image is requested to be rendered, maps will be regenerated.
+     * Does nothing if the file still exists and its contents did not change.
      */
-    public synchronized void invalidate() {
-        size = null;
+    public void invalidate() {
+        ImageMetadata previousMetadata;
+        synchronized (this) {
+            previousMetadata = metadata;
+            if (previousMetadata == null && metadataIndex != null) {
+                previousMetadata = metadataIndex.getLastKnown(filename);
+            }
+            metadata = null;
+        }
+
+        // Keep cached maps if contents did not change (e.g., file was touched or synced again)
+        // NOTE: file is hashed without locking this instance, and only if it could be the same
+        boolean exists = exists();
+        Long previousContentHash = (previousMetadata == null) ? null : previousMetadata.getContentHash();
+        if (previousContentHash != null && exists && getFileSize() == previousMetadata.getFileSize()) {
+            try {
+                if (getContentHash() == previousContentHash) {
+                    LOGGER.fine("Contents of ImageFile#(" + filename + ") did not change, kept cached maps");
+                    return;
+                }
+            } catch (IOException __) {
+                // Failed to read file, assume it changed
+            }
+        }
+        invalidateCache(exists);
+    }
+
+    /**
+     * Invalidate cached maps
+     * @param exists Whether image file still exists
+     */
+    private synchronized void invalidateCache(boolean exists) {
+        // Delete cache files, but keep those being streamed until their maps get replaced
+        Map<String, CachedMapsFile> previousCache = new HashMap<>(cache);
         cache.clear();
+        for (CachedMapsFile previousMaps : previousCache.values()) {
+            previousMaps.retire();
+        }
         CachedMapsFile.deleteAll(this);
+
+        // Re-render maps of images being shown
+        // NOTE: previous maps are released once swapped
+        if (exists) {
+            for (Map.Entry<String, Set<FakeImage>> entry : subscribers.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                FakeImage anySubscriber = entry.getValue().iterator().next();
+                int width = anySubscriber.getWidth();
+                int height = anySubscriber.getHeight();
+                CachedMapsFile previousMaps = previousCache.remove(entry.getKey());
+                YamipaPlugin.getInstance().getScheduler().execute(() -> hotSwap(width, height, previousMaps));
+            }
+        }
+        for (CachedMapsFile previousMaps : previousCache.values()) {
+            previousMaps.release();
+        }
+    }
+
+    /**
+     * Re-render maps and swap them into subscribed images
+     * <p>
+     * Subscribed images keep showing their previous maps until the new ones are ready, and then previous maps are
+     * released.
+     * @param width        Width in blocks
+     * @param height       Height in blocks
+     * @param previousMaps Previous cached maps or NULL if not available
+     */
+    @Blocking
+    private void hotSwap(int width, int height, @Nullable CachedMapsFile previousMaps) {
+        try {
+            swapMaps(width, height, previousMaps);
+        } finally {
+            if (previousMaps != null) {
+                previousMaps.release();
+            }
+        }
+    }
+
+    /**
+     * Swap maps without releasing previous ones
+     * @param width        Width in blocks
+     * @param height       Height in blocks
+     * @param previousMaps Previous cached maps or NULL if not available
+     */
+    @Blocking
+    private void swapMaps(int width, int height, @Nullable CachedMapsFile previousMaps) {
+        String cacheKey = width + "-" + height;
+        Set<FakeImage> currentSubscribers;
+        CachedMapsFile maps;
+
+        // Prevent rendering the same image/dimensions pair multiple times
+        Lock lock = locks.computeIfAbsent(cacheKey, __ -> new ReentrantLock());
+        lock.lock();
+        try {
+            // Skip if no longer in use
+            synchronized (this) {
+                if (!subscribers.containsKey(cacheKey)) {
+                    return;
+                }
+                maps = cache.get(cacheKey);
+            }
+
+            // Render maps (unless an image got them in the meantime)
+            if (maps == null) {
+                recordAccess(CachedMapsFile.getPath(this, width, height));
+                maps = CachedMapsFile.from(this, width, height);
+                if (previousMaps != null) {
+                    maps.reuseMapsFrom(previousMaps);
+                }
+            }
+
+            // Update state of this instance
+            synchronized (this) {
+                Set<FakeImage> subscribersOfKey = subscribers.get(cacheKey);
+                if (subscribersOfKey == null) {
+                    return;
+                }
+                cache.put(cacheKey, maps);
+                currentSubscribers = new HashSet<>(subscribersOfKey);
+            }
+        } finally {
+            lock.unlock();
+            locks.remove(cacheKey);
+        }
+
+        // Swap maps in subscribed images
+        for (FakeImage subscriber : currentSubscribers) {
+            subscriber.replaceMaps(maps);
+        }
+        LOGGER.fine("Hot-swapped cached maps \"" + cacheKey + "\" of " + currentSubscribers.size() + " image(s) " +
+            "in ImageFile#(" + filename + ")");
     }
 }
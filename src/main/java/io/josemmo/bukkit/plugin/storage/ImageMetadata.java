@@ -0,0 +1,223 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Properties of an image file that are expensive to read, as they require opening and decoding it.
+ * <p>
+ * Instances are immutable and only valid as long as the file size and last modified time of the image file do not
+ * change.
+ */
+public class ImageMetadata {
+    private final long fileSize;
+    private final long lastModified;
+    private final int width;
+    private final int height;
+    private final @Nullable String format;
+    private final @Nullable Long contentHash;
+    private final int[] frameDelays;
+
+    /**
+     * Read metadata from image file
+     * <p>
+     * Only the image header and frame properties are read. The content hash is left out, as it requires reading the
+     * entire file, and can be added later with {@link #withContentHash(long)}.
+     * @param  imageFile Image file instance
+     * @return           Image metadata instance
+     * @throws IOException if failed to read file
+     */
+    public static @NotNull ImageMetadata read(@NotNull ImageFile imageFile) throws IOException {
+        long fileSize = imageFile.getFileSize();
+        long lastModified = imageFile.getLastModified();
+
+        // Decode image properties
+        // NOTE: files that cannot be decoded are still indexed, so they are not opened again until they change
+        int width = 0;
+        int height = 0;
+        String format = null;
+        int[] frameDelays = new int[0];
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile.read())) {
+            ImageReader reader = ImageIO.getImageReaders(inputStream).next();
+            reader.setInput(inputStream);
+            String readerFormat = reader.getFormatName().toLowerCase();
+            int readerWidth = reader.getWidth(0);
+            int readerHeight = reader.getHeight(0);
+            int numOfImages = Math.max(reader.getNumImages(true), 1);
+            int[] delays = new int[numOfImages];
+            for (int i=0; i<numOfImages; ++i) {
+                delays[i] = FrameMetadata.read(reader, readerFormat, i).getDelay();
+            }
+            reader.dispose();
+            width = readerWidth;
+            height = readerHeight;
+            format = readerFormat;
+            frameDelays = delays;
+        } catch (IOException | RuntimeException __) {
+            // Not a valid image file
+        }
+
+        return new ImageMetadata(fileSize, lastModified, width, height, format, null, frameDelays);
+    }
+
+    /**
+     * Hash contents of image file
+     * @param  imageFile Image file instance
+     * @return           CRC32 (high bits) and Adler-32 (low bits) checksums of file contents
+     * @throws IOException if failed to read file
+     */
+    public static long hashContents(@NotNull ImageFile imageFile) throws IOException {
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        try (RandomAccessFile stream = imageFile.read()) {
+            byte[] buffer = new byte[64*1024];
+            int length;
+            while ((length = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, length);
+                adler.update(buffer, 0, length);
+            }
+        }
+        return (crc.getValue() << 32) | adler.getValue();
+    }
+
+    /**
+     * Class constructor
+     * @param fileSize     File size in bytes
+     * @param lastModified Last modified time in milliseconds
+     * @param width        Width in pixels, <code>0</code> if not a valid image
+     * @param height       Height in pixels, <code>0</code> if not a valid image
+     * @param format       Lowercase format name or NULL if not a valid image
+     * @param contentHash  Hash of file contents or NULL if not computed yet
+     * @param frameDelays  Delay of every image in file in 10ms intervals
+     */
+    ImageMetadata(
+        long fileSize,
+        long lastModified,
+        int width,
+        int height,
+        @Nullable String format,
+        @Nullable Long contentHash,
+        @NotNull int[] frameDelays
+    ) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.contentHash = contentHash;
+        this.frameDelays = frameDelays;
+    }
+
+    /**
+     * Get file size
+     * @return File size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Get last modified time
+     * @return Last modified time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get size in pixels
+     * @return Dimension instance or NULL if not a valid image file
+     */
+    public @Nullable Dimension getSize() {
+        return isValidImage() ? new Dimension(width, height) : null;
+    }
+
+    /**
+     * Get width
+     * @return Width in pixels, <code>0</code> if not a valid image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get height
+     * @return Height in pixels, <code>0</code> if not a valid image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get format
+     * @return Lowercase format name or NULL if not a valid image
+     */
+    public @Nullable String getFormat() {
+        return format;
+    }
+
+    /**
+     * Get content hash
+     * @return CRC32 (high bits) and Adler-32 (low bits) checksums of file contents or NULL if not computed yet
+     */
+    public @Nullable Long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Get copy with content hash
+     * @param  contentHash Hash of file contents
+     * @return             Image metadata instance
+     */
+    public @NotNull ImageMetadata withContentHash(long contentHash) {
+        return new ImageMetadata(fileSize, lastModified, width, height, format, contentHash, frameDelays);
+    }
+
+    /**
+     * Get frame delays
+     * @return Delay of every image in file in 10ms intervals (empty if not a valid image)
+     */
+    public @NotNull int[] getFrameDelays() {
+        return frameDelays;
+    }
+
+    /**
+     * Get number of frames
+     * @return Number of images in file, <code>0</code> if not a valid image
+     */
+    public int getNumOfFrames() {
+        return frameDelays.length;
+    }
+
+    /**
+     * Is valid image
+     * @return Whether file could be decoded as an image
+     */
+    public boolean isValidImage() {
+        return (format != null && width > 0 && height > 0);
+    }
+
+    /**
+     * Is up-to-date
+     * @param  fileSize     Current file size in bytes
+     * @param  lastModified Current last modified time in milliseconds
+     * @return              Whether metadata still describes the file
+     */
+    public boolean isUpToDate(long fileSize, long lastModified) {
+        return (this.fileSize == fileSize && this.lastModified == lastModified);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "ImageMetadata(size=" + width + "x" + height + ",format=" + format + ",frames=" +
+            frameDelays.length + ")";
+    }
+}
@@ -0,0 +1,220 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.utils.CsvConfiguration;
+import io.josemmo.bukkit.plugin.utils.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent index of image file metadata.
+ * <p>
+ * Metadata is kept on disk so that commands and render cost estimation do not need to open image files, not even
+ * after a server restart. Entries are only used while the size and last modified time of their image file match,
+ * and get refreshed in the background whenever the file system watcher detects a change.
+ */
+public class ImageMetadataIndex {
+    private static final String NULL_VALUE = "-";
+    private static final Logger LOGGER = Logger.getLogger("ImageMetadataIndex");
+    private final Path path;
+    private final ConcurrentMap<String, ImageMetadata> entries = new ConcurrentHashMap<>();
+    private @Nullable ThreadPoolExecutor executor;
+    private volatile boolean changed = false;
+
+    /**
+     * Class constructor
+     * @param path Path to index file
+     */
+    public ImageMetadataIndex(@NotNull Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Start instance
+     */
+    public void start() {
+        load();
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Yamipa-Metadata");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Stop instance
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException __) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        save();
+    }
+
+    /**
+     * Get up-to-date entry
+     * @param  imageFile Image file instance
+     * @return           Image metadata or NULL if missing or outdated
+     */
+    public @Nullable ImageMetadata get(@NotNull ImageFile imageFile) {
+        ImageMetadata metadata = entries.get(imageFile.getFilename());
+        if (metadata == null || !metadata.isUpToDate(imageFile.getFileSize(), imageFile.getLastModified())) {
+            return null;
+        }
+        return metadata;
+    }
+
+    /**
+     * Get entry, even if outdated
+     * @param  filename Image filename
+     * @return          Last known image metadata or NULL if missing
+     */
+    public @Nullable ImageMetadata getLastKnown(@NotNull String filename) {
+        return entries.get(filename);
+    }
+
+    /**
+     * Put entry
+     * @param filename Image filename
+     * @param metadata Image metadata
+     */
+    public void put(@NotNull String filename, @NotNull ImageMetadata metadata) {
+        entries.put(filename, metadata);
+        changed = true;
+    }
+
+    /**
+     * Remove entry
+     * @param filename Image filename
+     */
+    public void remove(@NotNull String filename) {
+        if (entries.remove(filename) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Remove entries of files that no longer exist
+     * @param filenames Filenames of existing images
+     */
+    public void retainAll(@NotNull Set<String> filenames) {
+        if (entries.keySet().retainAll(filenames)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Refresh entry in the background
+     * <p>
+     * Does nothing if entry is already up-to-date. Content hashes are computed here, so that other threads only need
+     * to read the image header. The index is saved to disk every time the refresh queue empties.
+     * @param imageFile Image file instance
+     */
+    public void refresh(@NotNull ImageFile imageFile) {
+        ThreadPoolExecutor currentExecutor = executor;
+        if (currentExecutor == null) {
+            return;
+        }
+        try {
+            currentExecutor.execute(() -> {
+                try {
+                    imageFile.getContentHash();
+                } catch (IOException __) {
+                    // Failed to read file, will be hashed again when needed
+                }
+                if (currentExecutor.getQueue().isEmpty()) {
+                    save();
+                }
+            });
+        } catch (RejectedExecutionException __) {
+            // Index is shutting down
+        }
+    }
+
+    /**
+     * Load index from disk
+     */
+    private void load() {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        CsvConfiguration config = new CsvConfiguration();
+        try {
+            config.load(path);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to load image metadata index", e);
+            return;
+        }
+        for (String[] row : config.getRows()) {
+            try {
+                int[] frameDelays = (row.length > 7) ?
+                    Arrays.stream(row[7].split(",")).mapToInt(Integer::parseInt).toArray() :
+                    new int[0];
+                ImageMetadata metadata = new ImageMetadata(
+                    Long.parseLong(row[1]),
+                    Long.parseLong(row[2]),
+                    Integer.parseInt(row[3]),
+                    Integer.parseInt(row[4]),
+                    row[5].equals(NULL_VALUE) ? null : row[5],
+                    row[6].equals(NULL_VALUE) ? null : Long.parseUnsignedLong(row[6], 16),
+                    frameDelays
+                );
+                entries.put(row[0], metadata);
+            } catch (Exception __) {
+                LOGGER.warning("Invalid image metadata index entry: " + String.join(";", row));
+            }
+        }
+        LOGGER.fine("Loaded " + entries.size() + " image metadata index entries");
+    }
+
+    /**
+     * Save index to disk
+     */
+    private synchronized void save() {
+        if (!changed) {
+            return;
+        }
+        changed = false;
+        CsvConfiguration config = new CsvConfiguration();
+        for (Map.Entry<String, ImageMetadata> entry : entries.entrySet()) {
+            ImageMetadata metadata = entry.getValue();
+            String format = metadata.getFormat();
+            Long contentHash = metadata.getContentHash();
+            config.addRow(new String[] {
+                entry.getKey(),
+                String.valueOf(metadata.getFileSize()),
+                String.valueOf(metadata.getLastModified()),
+                String.valueOf(metadata.getWidth()),
+                String.valueOf(metadata.getHeight()),
+                (format == null) ? NULL_VALUE : format,
+                (contentHash == null) ? NULL_VALUE : Long.toHexString(contentHash),
+                Arrays.stream(metadata.getFrameDelays()).mapToObj(String::valueOf).collect(Collectors.joining(","))
+            });
+        }
+        try {
+            config.save(path);
+        } catch (IOException e) {
+            changed = true;
+            LOGGER.warning("Failed to save image metadata index", e);
+        }
+    }
+}
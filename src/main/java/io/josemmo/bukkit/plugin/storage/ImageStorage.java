@@ -8,9 +8,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * Service for keeping track of image images.
@@ -20,22 +20,38 @@ import java.util.regex.PatternSyntaxException;
  * directory.
  */
 public class ImageStorage extends FileSystemWatcher {
+    private static final String METADATA_INDEX_FILENAME = "metadata.dat";
+    private static final String FILE_TREE_SNAPSHOT_FILENAME = "filetree.dat";
+    private static final int MAX_CACHED_PATTERNS = 500;
     private static final Logger LOGGER = Logger.getLogger("ImageStorage");
-    /** Map of registered files indexed by filename */
+    /** Map of registered files indexed by filename, only accessed while processing file events */
     private final SortedMap<String, ImageFile> files = new TreeMap<>();
+    /** Immutable snapshot of registered files, published after every batch of file events */
+    private volatile SortedMap<String, ImageFile> filesSnapshot = Collections.emptySortedMap();
+    private boolean filesChanged = false;
     private final Path cachePath;
     private final String allowedPaths;
+    private final ImageMetadataIndex metadataIndex;
+    /** Compiled allowed paths patterns indexed by expanded pattern */
+    private final ConcurrentMap<String, AllowedPathsPattern> patterns = new ConcurrentHashMap<>();
 
     /**
      * Class constructor
      * @param basePath     Path to directory containing the images
      * @param cachePath    Path to directory containing the cached image maps
      * @param allowedPaths Allowed paths pattern
+     * @param quietPeriod  Time in milliseconds a changed file must remain unchanged before reloading it
      */
-    public ImageStorage(@NotNull Path basePath, @NotNull Path cachePath, @NotNull String allowedPaths) {
-        super(basePath);
+    public ImageStorage(
+        @NotNull Path basePath,
+        @NotNull Path cachePath,
+        @NotNull String allowedPaths,
+        long quietPeriod
+    ) {
+        super(basePath, quietPeriod, cachePath.resolve(FILE_TREE_SNAPSHOT_FILENAME));
         this.cachePath = cachePath;
         this.allowedPaths = allowedPaths;
+        this.metadataIndex = new ImageMetadataIndex(cachePath.resolve(METADATA_INDEX_FILENAME));
     }
 
     /**
@@ -69,8 +85,12 @@ public class ImageStorage extends FileSystemWatcher {
         }
 
         // Start file system watcher
+        metadataIndex.start();
         super.start();
-        LOGGER.fine("Found " + files.size() + " file(s) in images directory");
+        synchronized (this) {
+            metadataIndex.retainAll(files.keySet());
+        }
+        LOGGER.fine("Found " + size() + " file(s) in images directory");
     }
 
     /**
@@ -79,29 +99,24 @@ public class ImageStorage extends FileSystemWatcher {
     @Override
     public void stop() {
         super.stop();
+        metadataIndex.stop();
     }
 
     /**
      * Get number of images
      * @return Number of images
      */
-    public synchronized int size() {
-        return files.size();
+    public int size() {
+        return filesSnapshot.size();
     }
 
     /**
      * Get image filenames
      * @param  sender Sender instance to filter only allowed images
-     * @return        Allowed images
+     * @return        Index of allowed images
      */
-    public synchronized @NotNull List<String> getFilenames(@NotNull CommandSender sender) {
-        List<String> response = new ArrayList<>();
-        for (String filename : files.keySet()) {
-            if (isPathAllowed(filename, sender)) {
-                response.add(filename);
-            }
-        }
-        return response;
+    public @NotNull FilenameIndex getFilenames(@NotNull CommandSender sender) {
+        return getAllowedPathsPattern(sender).filter(filesSnapshot);
     }
 
     /**
@@ -121,6 +136,18 @@ public class ImageStorage extends FileSystemWatcher {
      * @return        Whether sender is allowed to access path
      */
     public boolean isPathAllowed(@NotNull String path, @NotNull CommandSender sender) {
+        return getAllowedPathsPattern(sender).matches(path);
+    }
+
+    /**
+     * Get allowed paths pattern
+     * <p>
+     * Compiled patterns are cached by their expanded value, so a change in permissions results in a different
+     * pattern without the need to invalidate anything.
+     * @param  sender Sender instance
+     * @return        Compiled allowed paths pattern
+     */
+    private @NotNull AllowedPathsPattern getAllowedPathsPattern(@NotNull CommandSender sender) {
         // Find allowed paths pattern
         String rawPattern = null;
         if (sender instanceof Player) {
@@ -129,27 +156,29 @@ public class ImageStorage extends FileSystemWatcher {
         if (rawPattern == null) {
             rawPattern = allowedPaths;
         }
-        if (rawPattern.isEmpty()) {
-            return true;
-        }
 
         // Replace special tokens in pattern
         if (sender instanceof Player) {
             Player player = (Player) sender;
-            rawPattern = rawPattern.replaceAll("#player#", Matcher.quoteReplacement(Pattern.quote(player.getName())));
-            rawPattern = rawPattern.replaceAll("#uuid#", player.getUniqueId().toString());
+            rawPattern = rawPattern.replace("#player#", Pattern.quote(player.getName()));
+            rawPattern = rawPattern.replace("#uuid#", player.getUniqueId().toString());
         } else {
-            rawPattern = rawPattern.replaceAll("#player#", ".+");
-            rawPattern = rawPattern.replaceAll("#uuid#", ".+");
+            rawPattern = rawPattern.replace("#player#", ".+");
+            rawPattern = rawPattern.replace("#uuid#", ".+");
         }
 
-        // Perform partial match against pattern
-        try {
-            return Pattern.compile(rawPattern).matcher(path).find();
-        } catch (PatternSyntaxException __) {
-            LOGGER.warning("Invalid allowed paths pattern: " + rawPattern);
-            return false;
+        // Get compiled pattern
+        AllowedPathsPattern pattern = patterns.get(rawPattern);
+        if (pattern == null) {
+            if (patterns.size() >= MAX_CACHED_PATTERNS) {
+                patterns.clear();
+            }
+            pattern = patterns.computeIfAbsent(rawPattern, AllowedPathsPattern::new);
+            if (!pattern.isValid()) {
+                LOGGER.warning("Invalid allowed paths pattern: " + rawPattern);
+            }
         }
+        return pattern;
     }
 
     /**
@@ -157,8 +186,20 @@ public class ImageStorage extends FileSystemWatcher {
      * @param  filename Filename
      * @return          Image instance or NULL if not found
      */
-    public synchronized @Nullable ImageFile get(@NotNull String filename) {
-        return files.get(filename);
+    public @Nullable ImageFile get(@NotNull String filename) {
+        return filesSnapshot.get(filename);
+    }
+
+    /**
+     * Get paths to cache files in use
+     * @return Paths to cache files with at least one subscriber
+     */
+    @NotNull Set<Path> getCachePathsInUse() {
+        Set<Path> paths = new HashSet<>();
+        for (ImageFile imageFile : filesSnapshot.values()) {
+            paths.addAll(imageFile.getCachePathsInUse());
+        }
+        return paths;
     }
 
     /**
@@ -170,14 +211,32 @@ public class ImageStorage extends FileSystemWatcher {
         return basePath.relativize(path).toString().replaceAll("\\\\", "/");
     }
 
+    /**
+     * On batch of file events
+     * @param events Map of events indexed by file path
+     */
+    @Override
+    protected synchronized void onFileEvents(@NotNull Map<Path, FileEvent> events) {
+        super.onFileEvents(events);
+        if (filesChanged) {
+            filesSnapshot = Collections.unmodifiableSortedMap(new TreeMap<>(files));
+            filesChanged = false;
+        }
+        if (events.size() > 1) {
+            LOGGER.fine("Processed batch of " + events.size() + " file event(s)");
+        }
+    }
+
     /**
      * On file created
      * @param path File path
      */
     protected synchronized void onFileCreated(@NotNull Path path) {
         String filename = pathToFilename(path);
-        ImageFile imageFile = new ImageFile(filename, path);
+        ImageFile imageFile = new ImageFile(filename, path, metadataIndex);
         if (files.putIfAbsent(filename, imageFile) == null) {
+            filesChanged = true;
+            metadataIndex.refresh(imageFile);
             LOGGER.fine("Registered file \"" + filename + "\"");
         }
     }
@@ -191,6 +250,7 @@ public class ImageStorage extends FileSystemWatcher {
         ImageFile imageFile = files.get(filename);
         if (imageFile != null) {
             imageFile.invalidate();
+            metadataIndex.refresh(imageFile);
             LOGGER.fine("Invalidated file \"" + filename + "\"");
         }
     }
@@ -202,7 +262,9 @@ public class ImageStorage extends FileSystemWatcher {
     protected synchronized void onFileDeleted(@NotNull Path path) {
         String filename = pathToFilename(path);
         ImageFile imageFile = files.remove(filename);
+        metadataIndex.remove(filename);
         if (imageFile != null) {
+            filesChanged = true;
             imageFile.invalidate();
             LOGGER.fine("Unregistered file \"" + filename + "\"");
         }
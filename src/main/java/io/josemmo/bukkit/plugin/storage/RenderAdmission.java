@@ -0,0 +1,212 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.renderer.FakeMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.awt.*;
+
+/**
+ * Decision on whether (and how) an image file can be rendered at a given size.
+ * <p>
+ * Costs are estimated from the image header before rendering anything, and then compared against the memory and
+ * work budgets from the render context.
+ */
+public class RenderAdmission {
+    private static final long MIB = 1024L * 1024L;
+    private final int totalSteps;
+    private final @NotNull AnimationTimeline timeline;
+    private final boolean reduced;
+    private final boolean streamed;
+    private final @Nullable String refusedReason;
+
+    /**
+     * Evaluate rendering of image file
+     * @param  imageFile Image file instance
+     * @param  width     Width in blocks
+     * @param  height    Height in blocks
+     * @return           Admission decision
+     */
+    public static @NotNull RenderAdmission evaluate(@NotNull ImageFile imageFile, int width, int height) {
+        RenderContext context = RenderContext.get();
+        return evaluate(
+            imageFile,
+            width,
+            height,
+            context.getMaxRenderMemory(),
+            context.getMaxRenderWork(),
+            context.getMaxAnimationFps(),
+            context.getMaxAnimationSteps()
+        );
+    }
+
+    /**
+     * Evaluate rendering of image file
+     * @param  imageFile Image file instance
+     * @param  width     Width in blocks
+     * @param  height    Height in blocks
+     * @param  maxMemory Maximum memory in bytes, <code>0</code> for no limit
+     * @param  maxWork   Maximum number of pixels to process, <code>0</code> for no limit
+     * @param  maxFps    Maximum animation steps per second
+     * @param  maxSteps  Maximum number of animation steps
+     * @return           Admission decision
+     */
+    public static @NotNull RenderAdmission evaluate(
+        @NotNull ImageFile imageFile,
+        int width,
+        int height,
+        long maxMemory,
+        long maxWork,
+        int maxFps,
+        int maxSteps
+    ) {
+        Dimension size = imageFile.getSize();
+        int[] frameDelays = imageFile.getFrameDelays();
+        if (size == null || frameDelays.length == 0) {
+            // Let the renderer fail and show the error matrix
+            AnimationTimeline timeline = AnimationTimeline.from(new int[] {FrameMetadata.DEFAULT_DELAY}, 1, 1);
+            return new RenderAdmission(1, timeline, false, false, null);
+        }
+        int totalSteps = frameDelays.length;
+        AnimationTimeline timeline = AnimationTimeline.from(frameDelays, maxFps, maxSteps);
+
+        // Estimate number of pixels to handle
+        long outputPixels = (long) width * height * FakeMap.DIMENSION * FakeMap.DIMENSION;
+        long decodedPixels = (long) size.width * size.height;
+        if (!"gif".equals(imageFile.getFormat())) {
+            // Images other than GIFs get subsampled while decoding
+            int margin = CachedMapsFile.SUBSAMPLING_MARGIN;
+            decodedPixels = Math.min(decodedPixels, outputPixels * 4 * margin * margin);
+        }
+
+        // Every frame up to the last step has to be decoded, but not every frame has to be rendered
+        boolean reduced = false;
+        if (maxWork > 0) {
+            long decodeWork = decodedPixels * (timeline.getLastFrame() + 1);
+            if (decodeWork > maxWork) {
+                return refuse(totalSteps, "Image has too many pixels to decode (" +
+                    (decodeWork / 1_000_000) + " megapixels)");
+            }
+            long maxRenderedSteps = (maxWork - decodeWork) / outputPixels;
+            if (maxRenderedSteps < 1) {
+                return refuse(totalSteps, "Image is too big to render at " + width + "x" + height + " blocks");
+            }
+            if (maxRenderedSteps < timeline.size()) {
+                timeline = AnimationTimeline.from(frameDelays, maxFps, (int) maxRenderedSteps);
+                reduced = true;
+            }
+        }
+
+        // Estimate memory usage
+        // NOTE: canvas needs up to 8 bytes per pixel (with restore-to-previous disposal), output needs 4 bytes per
+        // pixel plus 1 byte for the tiles of the current step, and every step keeps 1 byte per pixel
+        long workingMemory = decodedPixels * 8 + outputPixels * 5;
+        long residentMemory = outputPixels * timeline.size();
+        boolean streamed = false;
+        if (maxMemory > 0) {
+            if (workingMemory > maxMemory) {
+                return refuse(totalSteps, "Image needs too much memory to render (" +
+                    (workingMemory / MIB) + " MiB)");
+            }
+            streamed = (workingMemory + residentMemory > maxMemory);
+        }
+
+        return new RenderAdmission(totalSteps, timeline, reduced, streamed, null);
+    }
+
+    /**
+     * Create refused decision
+     * @param  totalSteps Total number of steps in image
+     * @param  reason     Refusal reason
+     * @return            Admission decision
+     */
+    private static @NotNull RenderAdmission refuse(int totalSteps, @NotNull String reason) {
+        AnimationTimeline timeline = AnimationTimeline.from(new int[] {FrameMetadata.DEFAULT_DELAY}, 1, 1);
+        return new RenderAdmission(totalSteps, timeline, false, false, reason);
+    }
+
+    /**
+     * Class constructor
+     * @param totalSteps    Total number of steps in image
+     * @param timeline      Steps to render
+     * @param reduced       Whether steps were reduced to fit the work budget
+     * @param streamed      Whether to keep maps on disk instead of memory
+     * @param refusedReason Refusal reason or NULL if accepted
+     */
+    private RenderAdmission(
+        int totalSteps,
+        @NotNull AnimationTimeline timeline,
+        boolean reduced,
+        boolean streamed,
+        @Nullable String refusedReason
+    ) {
+        this.totalSteps = totalSteps;
+        this.timeline = timeline;
+        this.reduced = reduced;
+        this.streamed = streamed;
+        this.refusedReason = refusedReason;
+    }
+
+    /**
+     * Is refused
+     * @return Whether image must not be rendered
+     */
+    public boolean isRefused() {
+        return (refusedReason != null);
+    }
+
+    /**
+     * Get total number of steps
+     * @return Number of steps in image file
+     */
+    public int getTotalSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * Get number of steps to render
+     * @return Number of steps to render
+     */
+    public int getNumOfSteps() {
+        return timeline.size();
+    }
+
+    /**
+     * Get timeline
+     * @return Steps to render
+     */
+    public @NotNull AnimationTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Is streamed
+     * @return Whether maps are read from disk when needed instead of being kept in memory
+     */
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    /**
+     * Get message for command sender
+     * @return Human-readable decision or NULL if image gets rendered as usual
+     */
+    public @Nullable String getMessage() {
+        if (refusedReason != null) {
+            return refusedReason;
+        }
+        String message = null;
+        if (reduced) {
+            message = "Image will use " + timeline.size() + " out of " + totalSteps + " animation steps";
+        }
+        if (streamed) {
+            message = (message == null) ? "Image will be streamed from disk" : message + " and streamed from disk";
+        }
+        return (message == null) ? null : message + " to stay within server limits";
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "RenderAdmission(steps=" + timeline.size() + "/" + totalSteps + ",streamed=" + streamed +
+            ",refused=" + isRefused() + ")";
+    }
+}
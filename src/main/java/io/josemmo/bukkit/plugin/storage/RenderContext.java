@@ -0,0 +1,179 @@
+package io.josemmo.bukkit.plugin.storage;
+
+import io.josemmo.bukkit.plugin.YamipaPlugin;
+import io.josemmo.bukkit.plugin.renderer.ColorPalette;
+import io.josemmo.bukkit.plugin.renderer.ImageResampler;
+import io.josemmo.bukkit.plugin.renderer.ImageRenderer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings and resources used to render cached maps files.
+ * <p>
+ * When running as a plugin, these come from the plugin configuration.
+ * Standalone tools (like {@link CacheBuilder}) provide their own instead, so rendering does not need a server.
+ */
+public class RenderContext {
+    private static @Nullable RenderContext STANDALONE_INSTANCE;
+    private final Path cachePath;
+    private final ImageResampler.Filter resampleFilter;
+    private final long maxRenderMemory;
+    private final long maxRenderWork;
+    private final int maxAnimationFps;
+    private final int maxAnimationSteps;
+    private final ForkJoinPool pool;
+    private final @Nullable ForkJoinPool warmUpPool;
+    private final @Nullable ColorPalette palette;
+
+    /**
+     * Get current context
+     * @return Render context instance
+     */
+    public static @NotNull RenderContext get() {
+        if (STANDALONE_INSTANCE != null) {
+            return STANDALONE_INSTANCE;
+        }
+        YamipaPlugin plugin = YamipaPlugin.getInstance();
+        ImageRenderer renderer = plugin.getRenderer();
+        return new RenderContext(
+            plugin.getStorage().getCachePath(),
+            renderer.getResampleFilter(),
+            renderer.getMaxRenderMemory(),
+            renderer.getMaxRenderWork(),
+            renderer.getMaxAnimationFps(),
+            renderer.getMaxAnimationSteps(),
+            plugin.getRenderPool(),
+            plugin.getWarmUpPool(),
+            null
+        );
+    }
+
+    /**
+     * Get current cache path
+     * <p>
+     * Unlike {@link #get()}, this does not need the image renderer, so it also works after the renderer has stopped.
+     * @return Path to directory containing the cached image maps
+     */
+    static @NotNull Path getCurrentCachePath() {
+        if (STANDALONE_INSTANCE != null) {
+            return STANDALONE_INSTANCE.getCachePath();
+        }
+        return YamipaPlugin.getInstance().getStorage().getCachePath();
+    }
+
+    /**
+     * Use standalone context
+     * @param context Context to use instead of the plugin one
+     */
+    static void setStandalone(@NotNull RenderContext context) {
+        STANDALONE_INSTANCE = context;
+    }
+
+    /**
+     * Class constructor
+     * @param cachePath         Path to directory containing the cached image maps
+     * @param resampleFilter    Filter used for resizing images
+     * @param maxRenderMemory   Maximum memory in bytes for rendering a single image, <code>0</code> for no limit
+     * @param maxRenderWork     Maximum number of pixels to process for a single image, <code>0</code> for no limit
+     * @param maxAnimationFps   Maximum animation steps per second
+     * @param maxAnimationSteps Maximum number of animation steps
+     * @param pool              Fork/join pool to render images in
+     * @param warmUpPool        Fork/join pool warming-up the cache or NULL if none
+     * @param palette           Color palette or NULL to use the server one
+     */
+    RenderContext(
+        @NotNull Path cachePath,
+        @NotNull ImageResampler.Filter resampleFilter,
+        long maxRenderMemory,
+        long maxRenderWork,
+        int maxAnimationFps,
+        int maxAnimationSteps,
+        @NotNull ForkJoinPool pool,
+        @Nullable ForkJoinPool warmUpPool,
+        @Nullable ColorPalette palette
+    ) {
+        this.cachePath = cachePath;
+        this.resampleFilter = resampleFilter;
+        this.maxRenderMemory = maxRenderMemory;
+        this.maxRenderWork = maxRenderWork;
+        this.maxAnimationFps = maxAnimationFps;
+        this.maxAnimationSteps = maxAnimationSteps;
+        this.pool = pool;
+        this.warmUpPool = warmUpPool;
+        this.palette = palette;
+    }
+
+    /**
+     * Get cache path
+     * @return Path to directory containing the cached image maps
+     */
+    public @NotNull Path getCachePath() {
+        return cachePath;
+    }
+
+    /**
+     * Get resample filter
+     * @return Filter used for resizing images
+     */
+    public @NotNull ImageResampler.Filter getResampleFilter() {
+        return resampleFilter;
+    }
+
+    /**
+     * Get maximum render memory
+     * @return Maximum memory in bytes for rendering a single image, <code>0</code> for no limit
+     */
+    public long getMaxRenderMemory() {
+        return maxRenderMemory;
+    }
+
+    /**
+     * Get maximum render work
+     * @return Maximum number of pixels to process for a single image, <code>0</code> for no limit
+     */
+    public long getMaxRenderWork() {
+        return maxRenderWork;
+    }
+
+    /**
+     * Get maximum animation FPS
+     * @return Maximum animation steps per second
+     */
+    public int getMaxAnimationFps() {
+        return maxAnimationFps;
+    }
+
+    /**
+     * Get maximum animation steps
+     * @return Maximum number of animation steps
+     */
+    public int getMaxAnimationSteps() {
+        return maxAnimationSteps;
+    }
+
+    /**
+     * Get render pool
+     * @return Fork/join pool to render images in
+     */
+    public @NotNull ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Get warm-up pool
+     * @return Fork/join pool warming-up the cache or NULL if none
+     */
+    public @Nullable ForkJoinPool getWarmUpPool() {
+        return warmUpPool;
+    }
+
+    /**
+     * Get color palette
+     * @return Color palette or NULL to use the server one
+     */
+    public @Nullable ColorPalette getPalette() {
+        return palette;
+    }
+}
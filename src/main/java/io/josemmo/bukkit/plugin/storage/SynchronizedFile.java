@@ -44,6 +44,18 @@ public class SynchronizedFile {
         }
     }
 
+    /**
+     * Get file size
+     * @return File size in bytes or <code>0</code> in case of error
+     */
+    public long getFileSize() {
+        try {
+            return Files.size(path);
+        } catch (Exception __) {
+            return 0L;
+        }
+    }
+
     /**
      * Make directories
      * <p>
@@ -0,0 +1,295 @@
+package io.josemmo.bukkit.plugin.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal on top of a CSV snapshot file.
+ * <p>
+ * Changes are appended to a journal file next to the snapshot as "+" (add or replace) and "-" (remove) records,
+ * and written in groups with a single sync per flush. The snapshot is only rewritten when compacting, after which
+ * the journal is truncated. Records are idempotent, so replaying a journal on top of a newer snapshot is safe.
+ */
+public class CsvJournal {
+    private static final String ADD_RECORD = "+";
+    private static final String REMOVE_RECORD = "-";
+    private static final String JOURNAL_EXT = ".journal";
+    private static final String TEMP_EXT = ".tmp";
+    private static final Logger LOGGER = Logger.getLogger("CsvJournal");
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Function<String[], String> keyFunction;
+    private final Object fileLock = new Object();
+    private final Object pendingLock = new Object();
+    private List<String> pendingRecords = new ArrayList<>();
+    private @Nullable FileChannel channel;
+    private volatile int journalSize = 0;
+
+    /**
+     * Class constructor
+     * @param snapshotPath Path to snapshot file
+     * @param keyFunction  Function returning the unique key of a row
+     */
+    public CsvJournal(@NotNull Path snapshotPath, @NotNull Function<String[], String> keyFunction) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + JOURNAL_EXT);
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * Exists
+     * @return Whether snapshot or journal file exists
+     */
+    public boolean exists() {
+        return Files.isRegularFile(snapshotPath) || Files.isRegularFile(journalPath);
+    }
+
+    /**
+     * Load rows
+     * <p>
+     * Reads the snapshot and replays the journal on top of it. Invalid journal records (<i>e.g.,</i> a partially
+     * written last line after a crash) are skipped.
+     * @return Rows
+     * @throws IOException if failed to read snapshot
+     */
+    public @NotNull Collection<String[]> load() throws IOException {
+        Map<String, String[]> rows = new LinkedHashMap<>();
+
+        // Read snapshot
+        if (Files.isRegularFile(snapshotPath)) {
+            CsvConfiguration config = new CsvConfiguration();
+            config.load(snapshotPath);
+            for (String[] row : config.getRows()) {
+                rows.put(getKey(row), row);
+            }
+        }
+
+        // Replay journal
+        int numOfRecords = 0;
+        if (Files.isRegularFile(journalPath)) {
+            try (Stream<String> stream = Files.lines(journalPath, CsvConfiguration.CHARSET)) {
+                for (String line : (Iterable<String>) stream::iterator) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    String[] record = line.split(CsvConfiguration.COLUMN_DELIMITER);
+                    try {
+                        String[] row = Arrays.copyOfRange(record, 1, record.length);
+                        if (record[0].equals(ADD_RECORD)) {
+                            rows.put(keyFunction.apply(row), row);
+                        } else if (record[0].equals(REMOVE_RECORD)) {
+                            rows.remove(keyFunction.apply(row));
+                        } else {
+                            throw new IllegalArgumentException("Unknown record type");
+                        }
+                        ++numOfRecords;
+                    } catch (Exception __) {
+                        LOGGER.warning("Skipped invalid journal record: " + String.join(";", record));
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                LOGGER.severe("Failed to replay journal, recent changes might be lost", e);
+            }
+        }
+        journalSize = numOfRecords;
+        LOGGER.fine("Loaded " + rows.size() + " row(s) after replaying " + numOfRecords + " journal record(s)");
+
+        return rows.values();
+    }
+
+    /**
+     * Open journal for appending records
+     * @throws IOException if failed to open journal
+     */
+    public void open() throws IOException {
+        synchronized (fileLock) {
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            long size = channel.size();
+            channel.position(size);
+
+            // Terminate partially written last record, so it does not corrupt the next one
+            if (size > 0) {
+                ByteBuffer lastByte = ByteBuffer.allocate(1);
+                channel.read(lastByte, size-1);
+                if (lastByte.get(0) != '\n') {
+                    channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+                }
+            }
+        }
+    }
+
+    /**
+     * Close journal
+     * <p>
+     * Pending records are flushed first.
+     */
+    public void close() {
+        flush();
+        synchronized (fileLock) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.warning("Failed to close journal", e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Add or replace row
+     * @param row Row
+     */
+    public void add(@NotNull String[] row) {
+        append(ADD_RECORD, row);
+    }
+
+    /**
+     * Remove row
+     * @param row Row (or at least its key columns)
+     */
+    public void remove(@NotNull String[] row) {
+        append(REMOVE_RECORD, row);
+    }
+
+    /**
+     * Get journal size
+     * @return Number of records written to journal since last compaction
+     */
+    public int getJournalSize() {
+        return journalSize;
+    }
+
+    /**
+     * Flush pending records to disk
+     * <p>
+     * All records appended since the last flush are written at once and synced to disk.
+     */
+    public void flush() {
+        synchronized (fileLock) {
+            List<String> records;
+            synchronized (pendingLock) {
+                if (pendingRecords.isEmpty()) {
+                    return;
+                }
+                records = pendingRecords;
+                pendingRecords = new ArrayList<>();
+            }
+            if (channel == null) {
+                LOGGER.warning("Discarded " + records.size() + " journal record(s) as journal is closed");
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(String.join("", records).getBytes(CsvConfiguration.CHARSET));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                journalSize += records.size();
+            } catch (IOException e) {
+                LOGGER.severe("Failed to write " + records.size() + " journal record(s), will retry later", e);
+                synchronized (pendingLock) {
+                    records.addAll(pendingRecords);
+                    pendingRecords = records;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compact journal into snapshot
+     * <p>
+     * The rows supplier is called while no records can be appended, so it must not block. Records appended
+     * before that are reflected in the supplied rows, and records appended afterward go to the new journal.
+     * @param rowsSupplier Function returning all current rows
+     */
+    public void compact(@NotNull Supplier<Collection<String[]>> rowsSupplier) {
+        synchronized (fileLock) {
+            Collection<String[]> rows;
+            List<String> compactedRecords;
+            synchronized (pendingLock) {
+                rows = rowsSupplier.get();
+                compactedRecords = pendingRecords;
+                pendingRecords = new ArrayList<>();
+            }
+
+            // Write new snapshot
+            CsvConfiguration config = new CsvConfiguration();
+            for (String[] row : rows) {
+                config.addRow(row);
+            }
+            Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + TEMP_EXT);
+            try {
+                config.save(tempPath);
+                try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                    tempChannel.force(true);
+                }
+                try {
+                    Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException __) {
+                    Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                LOGGER.severe("Failed to write snapshot, keeping journal", e);
+                synchronized (pendingLock) {
+                    compactedRecords.addAll(pendingRecords);
+                    pendingRecords = compactedRecords;
+                }
+                return;
+            }
+
+            // Truncate journal
+            try {
+                if (channel != null) {
+                    channel.truncate(0);
+                    channel.force(true);
+                } else {
+                    Files.deleteIfExists(journalPath);
+                }
+                journalSize = 0;
+            } catch (IOException e) {
+                LOGGER.warning("Failed to truncate journal", e);
+            }
+            LOGGER.fine("Compacted journal into snapshot of " + rows.size() + " row(s)");
+        }
+    }
+
+    /**
+     * Append record to pending records
+     * @param type Record type
+     * @param row  Row
+     */
+    private void append(@NotNull String type, @NotNull String[] row) {
+        String record = type + CsvConfiguration.COLUMN_DELIMITER;
+        record += String.join(CsvConfiguration.COLUMN_DELIMITER, row) + "\n";
+        synchronized (pendingLock) {
+            pendingRecords.add(record);
+        }
+    }
+
+    /**
+     * Get row key
+     * @param  row Row
+     * @return     Unique key, or a placeholder for rows the key function cannot handle
+     */
+    private @NotNull String getKey(@NotNull String[] row) {
+        try {
+            return keyFunction.apply(row);
+        } catch (Exception __) {
+            // Keep invalid rows as-is, so they are reported by the caller
+            return "\0" + String.join(CsvConfiguration.COLUMN_DELIMITER, row);
+        }
+    }
+}
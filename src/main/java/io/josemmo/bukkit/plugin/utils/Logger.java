@@ -11,8 +11,22 @@ import java.util.logging.Level;
  * instance has changed (for example, because of the plugin being restarted by a plugin manager).
  */
 public class Logger {
+    private static @Nullable java.util.logging.Logger STANDALONE_LOGGER;
+    private static boolean STANDALONE_VERBOSE = false;
     private final @Nullable String name;
 
+    /**
+     * Use standalone logger
+     * <p>
+     * Used by tools that run without a plugin instance, records are sent to the given logger instead.
+     * @param logger  Logger to send records to
+     * @param verbose Whether to log verbose messages
+     */
+    public static void useStandaloneLogger(@NotNull java.util.logging.Logger logger, boolean verbose) {
+        STANDALONE_LOGGER = logger;
+        STANDALONE_VERBOSE = verbose;
+    }
+
     /**
      * Get logger instance
      * @param  name Logger name
@@ -45,11 +59,20 @@ public class Logger {
      * @param e       Optional throwable to log
      */
     private void log(@NotNull Level level, @NotNull String message, @Nullable Throwable e) {
-        YamipaPlugin plugin = YamipaPlugin.getInstance();
+        java.util.logging.Logger logger;
+        boolean verbose;
+        if (STANDALONE_LOGGER == null) {
+            YamipaPlugin plugin = YamipaPlugin.getInstance();
+            logger = plugin.getLogger();
+            verbose = plugin.isVerbose();
+        } else {
+            logger = STANDALONE_LOGGER;
+            verbose = STANDALONE_VERBOSE;
+        }
 
         // Handle verbose logging levels
         if (level.intValue() < Level.INFO.intValue()) {
-            if (!plugin.isVerbose()) return;
+            if (!verbose) return;
             level = Level.INFO;
         }
 
@@ -60,9 +83,9 @@ public class Logger {
 
         // Proxy record to real logger
         if (e == null) {
-            plugin.getLogger().log(level, message);
+            logger.log(level, message);
         } else {
-            plugin.getLogger().log(level, message, e);
+            logger.log(level, message, e);
         }
     }
 
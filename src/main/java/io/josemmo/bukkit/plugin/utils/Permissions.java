@@ -2,6 +2,7 @@ package io.josemmo.bukkit.plugin.utils;
 
 import com.palmergames.bukkit.towny.TownyAPI;
 import com.palmergames.bukkit.towny.object.TownyPermission;
+import com.palmergames.bukkit.towny.object.WorldCoord;
 import com.palmergames.bukkit.towny.utils.PlayerCacheUtil;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldguard.LocalPlayer;
@@ -10,14 +11,20 @@ import com.sk89q.worldguard.bukkit.WorldGuardPlugin;
 import com.sk89q.worldguard.internal.platform.WorldGuardPlatform;
 import com.sk89q.worldguard.protection.flags.Flags;
 import com.sk89q.worldguard.protection.flags.StateFlag;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import io.josemmo.bukkit.plugin.YamipaPlugin;
 import me.angeschossen.lands.api.LandsIntegration;
 import me.angeschossen.lands.api.flags.type.RoleFlag;
+import me.angeschossen.lands.api.land.Area;
 import me.angeschossen.lands.api.land.LandWorld;
 import me.angeschossen.lands.api.player.LandPlayer;
+import me.ryanhamshire.GriefPrevention.Claim;
 import me.ryanhamshire.GriefPrevention.GriefPrevention;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventBus;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import net.luckperms.api.event.user.UserUnloadEvent;
 import org.anjocaido.groupmanager.GroupManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -25,11 +32,21 @@ import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Permissions {
+    private static final long VARIABLES_TTL = 30_000; // In milliseconds, only for permission plugins without events
     private static final Logger LOGGER = Logger.getLogger();
+    /** Resolved player variables indexed by player UUID and variable name */
+    private static final Map<UUID, Map<String, CachedVariable>> VARIABLES_CACHE = new ConcurrentHashMap<>();
+    private static volatile long lastVariablesSweepAt = 0;
     private static @Nullable LuckPerms luckPerms;
     private static @Nullable GroupManager groupManager;
     private static @Nullable WorldGuard worldGuard;
@@ -40,6 +57,10 @@ public class Permissions {
     static {
         try {
             luckPerms = LuckPermsProvider.get();
+            EventBus eventBus = luckPerms.getEventBus();
+            YamipaPlugin plugin = YamipaPlugin.getInstance();
+            eventBus.subscribe(plugin, UserDataRecalculateEvent.class, e -> forgetVariables(e.getUser().getUniqueId()));
+            eventBus.subscribe(plugin, UserUnloadEvent.class, e -> forgetVariables(e.getUser().getUniqueId()));
         } catch (NoClassDefFoundError | IllegalStateException __) {
             // LuckPerms is not installed
         }
@@ -82,6 +103,64 @@ public class Permissions {
      * @return          Variable value or NULL if not found
      */
     public static @Nullable String getVariable(@NotNull String variable, @NotNull Player player) {
+        if (luckPerms == null && groupManager == null) {
+            return null;
+        }
+
+        // Get cached value
+        // NOTE: player variables are fetched before resolving the value, so a concurrent invalidation discards it
+        long now = System.currentTimeMillis();
+        Map<String, CachedVariable> variables = VARIABLES_CACHE.computeIfAbsent(
+            player.getUniqueId(),
+            __ -> new ConcurrentHashMap<>()
+        );
+        CachedVariable cached = variables.get(variable);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.value;
+        }
+
+        // Resolve value
+        String value = resolveVariable(variable, player);
+        if (luckPerms == null) {
+            variables.put(variable, new CachedVariable(value, now+VARIABLES_TTL));
+            forgetExpiredVariables(player.getUniqueId(), now);
+        } else {
+            variables.put(variable, new CachedVariable(value, Long.MAX_VALUE));
+        }
+        return value;
+    }
+
+    /**
+     * Forget cached variables
+     * @param uuid Player UUID
+     */
+    private static void forgetVariables(@NotNull UUID uuid) {
+        VARIABLES_CACHE.remove(uuid);
+    }
+
+    /**
+     * Forget expired variables of other players
+     * <p>
+     * Runs at most once per TTL, as it has to check the cached variables of every player.
+     * @param currentUuid UUID of player whose variables are being resolved
+     * @param now         Current timestamp in milliseconds
+     */
+    private static void forgetExpiredVariables(@NotNull UUID currentUuid, long now) {
+        if (now-lastVariablesSweepAt < VARIABLES_TTL) {
+            return;
+        }
+        lastVariablesSweepAt = now;
+        VARIABLES_CACHE.entrySet().removeIf(entry -> !entry.getKey().equals(currentUuid) &&
+            entry.getValue().values().stream().allMatch(item -> item.expiresAt <= now));
+    }
+
+    /**
+     * Resolve player variable
+     * @param  variable Variable name (key)
+     * @param  player   Player instance
+     * @return          Variable value or NULL if not found
+     */
+    private static @Nullable String resolveVariable(@NotNull String variable, @NotNull Player player) {
         if (luckPerms != null) {
             return luckPerms.getPlayerAdapter(Player.class).getUser(player).getCachedData().getMetaData()
                 .getMetaValue(variable);
@@ -123,6 +202,19 @@ public class Permissions {
             && queryLands(player, location, false);
     }
 
+    /**
+     * Create batched permissions query
+     * <p>
+     * Useful for checking many locations at once, as protection plugins are only queried once per region, claim,
+     * town block or area.
+     * @param  player  Player instance
+     * @param  isBuild Whether to check build (<code>true</code>) or destroy (<code>false</code>) permissions
+     * @return         Batched query instance
+     */
+    public static @NotNull BatchQuery newBatchQuery(@NotNull Player player, boolean isBuild) {
+        return new BatchQuery(player, isBuild);
+    }
+
     private static boolean queryWorldGuard(@NotNull Player player, @NotNull Location location, boolean isBuild) {
         if (worldGuard == null) {
             return true;
@@ -190,4 +282,110 @@ public class Permissions {
             me.angeschossen.lands.api.flags.type.Flags.BLOCK_BREAK;
         return landWorld.hasRoleFlag(landPlayer, location, flag, null, false);
     }
+
+    /**
+     * Batched permissions query
+     * <p>
+     * Results are memoized by the smallest unit each protection plugin assigns permissions to, so instances should
+     * only be kept for the duration of a single operation.
+     */
+    public static class BatchQuery {
+        private final Player player;
+        private final boolean isBuild;
+        private final Map<Object, Boolean> worldGuardResults = new HashMap<>();
+        private final Map<Object, Boolean> griefPreventionResults = new HashMap<>();
+        private final Map<Object, Boolean> townyResults = new HashMap<>();
+        private final Map<Object, Boolean> landsResults = new HashMap<>();
+
+        /**
+         * Class constructor
+         * @param player  Player instance
+         * @param isBuild Whether to check build or destroy permissions
+         */
+        private BatchQuery(@NotNull Player player, boolean isBuild) {
+            this.player = player;
+            this.isBuild = isBuild;
+        }
+
+        /**
+         * Test location
+         * @param  location Block location
+         * @return          Whether player has permission
+         */
+        public boolean test(@NotNull Location location) {
+            return testWorldGuard(location)
+                && testGriefPrevention(location)
+                && testTowny(location)
+                && testLands(location);
+        }
+
+        /**
+         * Test all locations
+         * @param  locations Block locations
+         * @return           Whether player has permission in all locations
+         */
+        public boolean testAll(@NotNull Location[] locations) {
+            for (Location location : locations) {
+                if (!test(location)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean testWorldGuard(@NotNull Location location) {
+            if (worldGuard == null) {
+                return true;
+            }
+            Set<ProtectedRegion> regions = worldGuard.getPlatform().getRegionContainer().createQuery()
+                .getApplicableRegions(BukkitAdapter.adapt(location))
+                .getRegions();
+            Object key = Arrays.asList(location.getWorld(), regions);
+            return worldGuardResults.computeIfAbsent(key, __ -> queryWorldGuard(player, location, isBuild));
+        }
+
+        private boolean testGriefPrevention(@NotNull Location location) {
+            if (griefPrevention == null) {
+                return true;
+            }
+            Claim claim = griefPrevention.dataStore.getClaimAt(location, false, null);
+            Object key = Arrays.asList((claim == null) ? location.getWorld() : claim, location.getBlock().getType());
+            return griefPreventionResults.computeIfAbsent(key, __ -> queryGriefPrevention(player, location, isBuild));
+        }
+
+        private boolean testTowny(@NotNull Location location) {
+            if (townyApi == null) {
+                return true;
+            }
+            Object key = Arrays.asList(WorldCoord.parseWorldCoord(location), location.getBlock().getType());
+            return townyResults.computeIfAbsent(key, __ -> queryTowny(player, location, isBuild));
+        }
+
+        private boolean testLands(@NotNull Location location) {
+            if (landsApi == null) {
+                return true;
+            }
+            Area area = landsApi.getArea(location);
+            Object key = (area == null) ? location.getWorld() : area;
+            return landsResults.computeIfAbsent(key, __ -> queryLands(player, location, isBuild));
+        }
+    }
+
+    /**
+     * Resolved player variable
+     */
+    private static class CachedVariable {
+        private final @Nullable String value;
+        private final long expiresAt;
+
+        /**
+         * Class constructor
+         * @param value     Variable value or NULL if not found
+         * @param expiresAt Expiration timestamp in milliseconds
+         */
+        private CachedVariable(@Nullable String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
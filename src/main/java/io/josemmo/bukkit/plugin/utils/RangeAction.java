@@ -0,0 +1,78 @@
+package io.josemmo.bukkit.plugin.utils;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Fork/join action that runs a callback for every index in a range,
+ * splitting the range in halves until it reaches the size of a single work unit.
+ */
+public class RangeAction extends RecursiveAction {
+    private final int from;
+    private final int to;
+    private final int unitSize;
+    private final IntConsumer callback;
+
+    /**
+     * Run callback for every index in range
+     * @param pool     Fork/join pool to run the work in
+     * @param from     First index (inclusive)
+     * @param to       Last index (exclusive)
+     * @param unitSize Maximum number of indexes to process sequentially
+     * @param callback Callback to run for each index
+     */
+    public static void run(@NotNull ForkJoinPool pool, int from, int to, int unitSize, @NotNull IntConsumer callback) {
+        if (from >= to) {
+            return;
+        }
+        RangeAction action = new RangeAction(from, to, Math.max(unitSize, 1), callback);
+        if (getPool() == pool) {
+            // Already running inside pool, fork from current worker
+            action.invoke();
+        } else {
+            pool.invoke(action);
+        }
+    }
+
+    /**
+     * Run callback for every index in range (one index per work unit)
+     * @param pool     Fork/join pool to run the work in
+     * @param from     First index (inclusive)
+     * @param to       Last index (exclusive)
+     * @param callback Callback to run for each index
+     */
+    public static void run(@NotNull ForkJoinPool pool, int from, int to, @NotNull IntConsumer callback) {
+        run(pool, from, to, 1, callback);
+    }
+
+    /**
+     * Class constructor
+     * @param from     First index (inclusive)
+     * @param to       Last index (exclusive)
+     * @param unitSize Maximum number of indexes to process sequentially
+     * @param callback Callback to run for each index
+     */
+    private RangeAction(int from, int to, int unitSize, @NotNull IntConsumer callback) {
+        this.from = from;
+        this.to = to;
+        this.unitSize = unitSize;
+        this.callback = callback;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= unitSize) {
+            for (int i=from; i<to; ++i) {
+                callback.accept(i);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(
+            new RangeAction(from, middle, unitSize, callback),
+            new RangeAction(middle, to, unitSize, callback)
+        );
+    }
+}